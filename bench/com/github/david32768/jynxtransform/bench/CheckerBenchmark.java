@@ -0,0 +1,172 @@
+package com.github.david32768.jynxtransform.bench;
+
+import java.io.IOException;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassModel;
+import java.lang.classfile.ClassTransform;
+import java.lang.classfile.CodeModel;
+import java.lang.classfile.CodeTransform;
+import java.lang.classfile.Instruction;
+import java.lang.classfile.MethodModel;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import com.github.david32768.jynxtransform.JynxStackChecker;
+
+// measures JynxStackChecker throughput (ns/instruction) and allocation (bytes/instruction)
+//     against an identity CodeTransform over JDK classes and synthetic methods
+//     allocation is measured with com.sun.management.ThreadMXBean on the benchmark thread
+public class CheckerBenchmark {
+
+    private record Workload(String name, List<ClassModel> models, long instructions) {}
+
+    private record Result(double nsPerInstruction, double bytesPerInstruction) {}
+
+    private static final int DEFAULT_WARMUP = 5;
+    private static final int DEFAULT_ITERATIONS = 10;
+    private static final int DEFAULT_JDK_CLASSES = 2000;
+
+    private final ClassFile classFile;
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final int warmup;
+    private final int iterations;
+
+    public CheckerBenchmark(int warmup, int iterations) {
+        this.classFile = ClassFile.of();
+        this.threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        this.warmup = warmup;
+        this.iterations = iterations;
+    }
+
+    private Workload workload(String name, List<byte[]> classes) {
+        List<ClassModel> models = new ArrayList<>(classes.size());
+        long instructions = 0;
+        for (byte[] bytes : classes) {
+            var model = classFile.parse(bytes);
+            models.add(model);
+            for (MethodModel mm : model.methods()) {
+                var code = mm.code();
+                if (code.isPresent()) {
+                    instructions += countInstructions(code.get());
+                }
+            }
+        }
+        return new Workload(name, models, instructions);
+    }
+
+    private static long countInstructions(CodeModel code) {
+        long count = 0;
+        for (var element : code) {
+            if (element instanceof Instruction) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private static List<byte[]> jdkClasses(int limit) throws IOException {
+        var fs = FileSystems.getFileSystem(URI.create("jrt:/"));
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(fs.getPath("/modules/java.base"))) {
+            paths = stream
+                    .filter(p -> p.toString().endsWith(".class"))
+                    .sorted()
+                    .limit(limit)
+                    .toList();
+        }
+        List<byte[]> result = new ArrayList<>(paths.size());
+        for (var path : paths) {
+            result.add(Files.readAllBytes(path));
+        }
+        return result;
+    }
+
+    private long run(Workload workload, Supplier<CodeTransform> supplier) {
+        long size = 0;
+        var transform = ClassTransform.transformingMethodBodies(supplier.get());
+        for (var model : workload.models()) {
+            size += classFile.transform(model, transform).length;
+        }
+        return size;
+    }
+
+    private Result measure(Workload workload, Supplier<CodeTransform> supplier) {
+        long blackhole = 0;
+        for (int i = 0; i < warmup; ++i) {
+            blackhole += run(workload, supplier);
+        }
+        long bytes = threadBean.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            blackhole += run(workload, supplier);
+        }
+        long elapsed = System.nanoTime() - start;
+        bytes = threadBean.getCurrentThreadAllocatedBytes() - bytes;
+        if (blackhole == 0) {
+            System.err.println("nothing transformed");
+        }
+        double count = (double)workload.instructions() * iterations;
+        return new Result(elapsed / count, bytes / count);
+    }
+
+    private void report(Workload workload) {
+        var identity = measure(workload, () -> CodeTransform.ACCEPT_ALL);
+        var checker = measure(workload, JynxStackChecker::new);
+        System.out.format("%-14s %10d %10.2f %10.2f %10.2f %10.1f %10.1f %10.1f%n",
+                workload.name(), workload.instructions(),
+                identity.nsPerInstruction(), checker.nsPerInstruction(),
+                checker.nsPerInstruction() - identity.nsPerInstruction(),
+                identity.bytesPerInstruction(), checker.bytesPerInstruction(),
+                checker.bytesPerInstruction() - identity.bytesPerInstruction());
+    }
+
+    private static void usage() {
+        System.err.println("usage: CheckerBenchmark [--warmup n] [--iterations n] [--jdk-classes n] [--size n]");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int warmup = DEFAULT_WARMUP;
+        int iterations = DEFAULT_ITERATIONS;
+        int jdkClasses = DEFAULT_JDK_CLASSES;
+        int size = 1000;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                usage();
+            }
+            int value = Integer.parseInt(args[i + 1]);
+            switch (args[i]) {
+                case "--warmup" -> warmup = value;
+                case "--iterations" -> iterations = value;
+                case "--jdk-classes" -> jdkClasses = value;
+                case "--size" -> size = value;
+                default -> usage();
+            }
+        }
+        var benchmark = new CheckerBenchmark(warmup, iterations);
+        Map<String, List<byte[]>> corpus = new LinkedHashMap<>();
+        corpus.put("jdk", jdkClasses(jdkClasses));
+        corpus.put("deep-stack", List.of(SyntheticClasses.deepStack(size)));
+        corpus.put("many-labels", List.of(SyntheticClasses.manyLabels(size)));
+        corpus.put("tableswitch", List.of(SyntheticClasses.tableSwitch(size)));
+        corpus.put("lookupswitch", List.of(SyntheticClasses.lookupSwitch(size)));
+        corpus.put("dup2_x2", List.of(SyntheticClasses.dup2x2(size)));
+        corpus.put("handlers", List.of(SyntheticClasses.exceptionHandlers(size)));
+        corpus.put("goto-padding", List.of(SyntheticClasses.gotoPadding(size, 3)));
+        System.out.format("%-14s %10s %10s %10s %10s %10s %10s %10s%n",
+                "workload", "insts", "id ns/i", "chk ns/i", "delta", "id B/i", "chk B/i", "delta");
+        for (var entry : corpus.entrySet()) {
+            benchmark.report(benchmark.workload(entry.getKey(), entry.getValue()));
+        }
+    }
+
+}
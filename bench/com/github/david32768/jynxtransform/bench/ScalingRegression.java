@@ -0,0 +1,178 @@
+package com.github.david32768.jynxtransform.bench;
+
+import java.lang.classfile.CodeTransform;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import com.github.david32768.jynxtransform.JynxStackChecker;
+
+// fails (exit status 1) if the time or allocation of JynxStackChecker grows faster than linearly
+//     with the size of a synthetic method
+//     each workload is built at sizes min-size * 2^i (i = 0 .. doublings) with the checker applied as it is built
+//         (so chains of labels after a goto are seen) and with an identity CodeTransform
+//         the cost of the checker is the difference (the builder itself is not linear for some workloads)
+//     growth is log(cost(largest) / cost(smallest)) / log(largest / smallest)
+//         i.e. 1 for linear and 2 for quadratic, and must not exceed max-growth
+//     time is the minimum over rounds (to reduce noise); allocation is measured with com.sun.management.ThreadMXBean
+public class ScalingRegression {
+
+    private record Workload(String name, BiFunction<Integer, CodeTransform, byte[]> generator) {}
+
+    private record Cost(double nanos, double bytes) {}
+
+    private static final int DEFAULT_WARMUP = 3;
+    private static final int DEFAULT_ROUNDS = 5;
+    private static final int DEFAULT_MIN_SIZE = 500;
+    private static final int DEFAULT_DOUBLINGS = 3;
+    private static final double DEFAULT_MAX_GROWTH = 1.3;
+    private static final int REPEATS_AT_MAX_SIZE = 4;
+
+    private static final List<Workload> WORKLOADS = List.of(
+            new Workload("deep-stack", SyntheticClasses::deepStack),
+            new Workload("many-labels", SyntheticClasses::manyLabels),
+            new Workload("tableswitch", SyntheticClasses::tableSwitch),
+            new Workload("lookupswitch", SyntheticClasses::lookupSwitch),
+            new Workload("dup2_x2", SyntheticClasses::dup2x2),
+            new Workload("goto-chain", (size, transform) -> SyntheticClasses.afterGotoLabels(1, size, transform)),
+            new Workload("goto-chains", (size, transform) -> SyntheticClasses.afterGotoLabels(size, 4, transform)),
+            new Workload("handlers", SyntheticClasses::exceptionHandlers),
+            new Workload("goto-padding", (size, transform) -> SyntheticClasses.gotoPadding(1, size, transform)),
+            new Workload("goto-paddings", (size, transform) -> SyntheticClasses.gotoPadding(size, 3, transform)),
+            new Workload("padded-dead-labels", (size, transform) -> SyntheticClasses.paddedDeadLabels(size, 3, transform)));
+
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final int warmup;
+    private final int rounds;
+    private final int minSize;
+    private final int maxSize;
+    private final double maxGrowth;
+    private long blackhole;
+
+    public ScalingRegression(int warmup, int rounds, int minSize, int doublings, double maxGrowth) {
+        this.threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        this.warmup = warmup;
+        this.rounds = rounds;
+        this.minSize = minSize;
+        this.maxSize = minSize << doublings;
+        this.maxGrowth = maxGrowth;
+    }
+
+    // time and allocation of repeats builds
+    private long[] build(Workload workload, int size, CodeTransform transform, int repeats) {
+        long allocated = threadBean.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < repeats; ++i) {
+            blackhole += workload.generator().apply(size, transform).length;
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = threadBean.getCurrentThreadAllocatedBytes() - allocated;
+        return new long[]{elapsed, allocated};
+    }
+
+    // cost of the checker in one build of size
+    private Cost measure(Workload workload, int size) {
+        int repeats = REPEATS_AT_MAX_SIZE * (maxSize / size);
+        var checker = new JynxStackChecker();
+        for (int i = 0; i < warmup; ++i) {
+            build(workload, size, CodeTransform.ACCEPT_ALL, repeats);
+            build(workload, size, checker, repeats);
+        }
+        double[] identity = {Double.MAX_VALUE, Double.MAX_VALUE};
+        double[] checked = {Double.MAX_VALUE, Double.MAX_VALUE};
+        for (int round = 0; round < rounds; ++round) {
+            long[] result = build(workload, size, CodeTransform.ACCEPT_ALL, repeats);
+            for (int i = 0; i < 2; ++i) {
+                identity[i] = Math.min(identity[i], (double)result[i] / repeats);
+            }
+            result = build(workload, size, checker, repeats);
+            for (int i = 0; i < 2; ++i) {
+                checked[i] = Math.min(checked[i], (double)result[i] / repeats);
+            }
+        }
+        // at least one so that growth is defined
+        return new Cost(Math.max(1.0, checked[0] - identity[0]), Math.max(1.0, checked[1] - identity[1]));
+    }
+
+    private double growth(double smallest, double largest) {
+        return Math.log(largest / smallest) / Math.log((double)maxSize / minSize);
+    }
+
+    // returns true if growth is at most linear (within maxGrowth)
+    private boolean check(Workload workload) {
+        List<Cost> costs = new ArrayList<>();
+        for (int size = minSize; size <= maxSize; size *= 2) {
+            var cost = measure(workload, size);
+            costs.add(cost);
+            System.out.format("%-14s %8d %12.1f %12.1f%n", workload.name(), size,
+                    cost.nanos() / size, cost.bytes() / size);
+        }
+        var smallest = costs.getFirst();
+        var largest = costs.getLast();
+        double timeGrowth = growth(smallest.nanos(), largest.nanos());
+        double allocationGrowth = growth(smallest.bytes(), largest.bytes());
+        boolean ok = timeGrowth <= maxGrowth && allocationGrowth <= maxGrowth;
+        System.out.format("%-14s growth time %.2f allocation %.2f %s%n", workload.name(),
+                timeGrowth, allocationGrowth, ok? "ok": "FAILED");
+        return ok;
+    }
+
+    private static void usage() {
+        System.err.println("usage: ScalingRegression [--warmup n] [--rounds n] [--min-size n] [--doublings n]"
+                + " [--max-growth x] [workload ...]");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) {
+        int warmup = DEFAULT_WARMUP;
+        int rounds = DEFAULT_ROUNDS;
+        int minSize = DEFAULT_MIN_SIZE;
+        int doublings = DEFAULT_DOUBLINGS;
+        double maxGrowth = DEFAULT_MAX_GROWTH;
+        int argi = 0;
+        while (argi < args.length && args[argi].startsWith("--")) {
+            if (argi + 1 == args.length) {
+                usage();
+            }
+            String value = args[argi + 1];
+            switch (args[argi]) {
+                case "--warmup" -> warmup = Integer.parseInt(value);
+                case "--rounds" -> rounds = Integer.parseInt(value);
+                case "--min-size" -> minSize = Integer.parseInt(value);
+                case "--doublings" -> doublings = Integer.parseInt(value);
+                case "--max-growth" -> maxGrowth = Double.parseDouble(value);
+                default -> usage();
+            }
+            argi += 2;
+        }
+        if (doublings < 1) {
+            usage();
+        }
+        List<Workload> workloads = new ArrayList<>();
+        for (var workload : WORKLOADS) {
+            if (argi == args.length || List.of(args).subList(argi, args.length).contains(workload.name())) {
+                workloads.add(workload);
+            }
+        }
+        if (workloads.isEmpty()) {
+            usage();
+        }
+        var regression = new ScalingRegression(warmup, rounds, minSize, doublings, maxGrowth);
+        System.out.format("%-14s %8s %12s %12s%n", "workload", "size", "ns/unit", "B/unit");
+        int failed = 0;
+        for (var workload : workloads) {
+            if (!regression.check(workload)) {
+                ++failed;
+            }
+        }
+        if (regression.blackhole == 0) {
+            System.err.println("nothing built");
+        }
+        if (failed != 0) {
+            System.err.format("%d of %d workloads grow faster than linearly%n", failed, workloads.size());
+            System.exit(1);
+        }
+    }
+
+}
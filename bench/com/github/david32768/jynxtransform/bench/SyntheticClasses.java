@@ -0,0 +1,265 @@
+package com.github.david32768.jynxtransform.bench;
+
+import static java.lang.constant.ConstantDescs.CD_Exception;
+import static java.lang.constant.ConstantDescs.CD_int;
+import static java.lang.constant.ConstantDescs.CD_long;
+import static java.lang.constant.ConstantDescs.CD_void;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeTransform;
+import java.lang.classfile.Label;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.instruction.ConstantInstruction;
+import java.lang.classfile.instruction.StackInstruction;
+import java.lang.classfile.instruction.SwitchCase;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// builds classes with a single static method 'test' stressing one aspect of JynxStackChecker
+//     the code may be passed through a CodeTransform as it is built (e.g. a JynxStackChecker)
+//         which is the only way a transform sees labels bound at the same position
+//         (a parsed CodeModel has one label for each position)
+//     methods with unreachable code (as Jynx output) or many handlers are built without stack maps as version 49
+public class SyntheticClasses {
+
+    private static final String METHOD_NAME = "test";
+    private static final int FLAGS = ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC;
+
+    // constant pushed by reachable code and unreachable padding of the same kind, and the pop for it
+    private static final Opcode[][] PADDING = {
+        {Opcode.ICONST_1, Opcode.ICONST_0, Opcode.POP},
+        {Opcode.LCONST_1, Opcode.LCONST_0, Opcode.POP2},
+        {Opcode.FCONST_1, Opcode.FCONST_0, Opcode.POP},
+        {Opcode.DCONST_1, Opcode.DCONST_0, Opcode.POP2},
+        {Opcode.ACONST_NULL, Opcode.ACONST_NULL, Opcode.POP},
+    };
+
+    private SyntheticClasses() {}
+
+    private static byte[] build(String name, MethodTypeDesc type, CodeTransform transform,
+            Consumer<CodeBuilder> code) {
+        return ClassFile.of().build(ClassDesc.of(name),
+                clb -> clb.withMethodBody(METHOD_NAME, type, FLAGS, cob -> cob.transforming(transform, code)));
+    }
+
+    private static byte[] buildWithoutStackMaps(String name, MethodTypeDesc type, CodeTransform transform,
+            Consumer<CodeBuilder> code) {
+        var classFile = ClassFile.of(ClassFile.StackMapsOption.DROP_STACK_MAPS,
+                ClassFile.DeadCodeOption.KEEP_DEAD_CODE);
+        return classFile.build(ClassDesc.of(name), clb -> {
+            clb.withVersion(ClassFile.JAVA_5_VERSION, 0);
+            clb.withMethodBody(METHOD_NAME, type, FLAGS, cob -> cob.transforming(transform, code));
+        });
+    }
+
+    // pushes depth ints then adds them
+    public static byte[] deepStack(int depth) {
+        return deepStack(depth, CodeTransform.ACCEPT_ALL);
+    }
+
+    public static byte[] deepStack(int depth, CodeTransform transform) {
+        return build("DeepStack", MethodTypeDesc.of(CD_int), transform, cob -> {
+            for (int i = 0; i < depth; ++i) {
+                cob.iconst_1();
+            }
+            for (int i = 1; i < depth; ++i) {
+                cob.iadd();
+            }
+            cob.ireturn();
+        });
+    }
+
+    // count forward conditional branches each to its own label
+    public static byte[] manyLabels(int count) {
+        return manyLabels(count, CodeTransform.ACCEPT_ALL);
+    }
+
+    public static byte[] manyLabels(int count, CodeTransform transform) {
+        return build("ManyLabels", MethodTypeDesc.of(CD_void, CD_int), transform, cob -> {
+            for (int i = 0; i < count; ++i) {
+                Label label = cob.newLabel();
+                cob.iload(0);
+                cob.ifeq(label);
+                cob.iinc(0, 1);
+                cob.labelBinding(label);
+            }
+            cob.return_();
+        });
+    }
+
+    private static List<SwitchCase> cases(CodeBuilder cob, int count, int step) {
+        List<SwitchCase> cases = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            cases.add(SwitchCase.of(i * step, cob.newLabel()));
+        }
+        return cases;
+    }
+
+    private static void switchTargets(CodeBuilder cob, Label dflt, List<SwitchCase> cases) {
+        for (var switchCase : cases) {
+            cob.labelBinding(switchCase.target());
+            cob.ireturn();
+        }
+        cob.labelBinding(dflt);
+        cob.ireturn();
+    }
+
+    // tableswitch with count cases and a non-empty stack at every target
+    public static byte[] tableSwitch(int count) {
+        return tableSwitch(count, CodeTransform.ACCEPT_ALL);
+    }
+
+    public static byte[] tableSwitch(int count, CodeTransform transform) {
+        return build("TableSwitch", MethodTypeDesc.of(CD_int, CD_int), transform, cob -> {
+            Label dflt = cob.newLabel();
+            var cases = cases(cob, count, 1);
+            cob.iconst_1();
+            cob.iload(0);
+            cob.tableswitch(0, count - 1, dflt, cases);
+            switchTargets(cob, dflt, cases);
+        });
+    }
+
+    // lookupswitch with count sparse cases and a non-empty stack at every target
+    public static byte[] lookupSwitch(int count) {
+        return lookupSwitch(count, CodeTransform.ACCEPT_ALL);
+    }
+
+    public static byte[] lookupSwitch(int count, CodeTransform transform) {
+        return build("LookupSwitch", MethodTypeDesc.of(CD_int, CD_int), transform, cob -> {
+            Label dflt = cob.newLabel();
+            var cases = cases(cob, count, 7);
+            cob.iconst_1();
+            cob.iload(0);
+            cob.lookupswitch(dflt, cases);
+            switchTargets(cob, dflt, cases);
+        });
+    }
+
+    // count DUP2_X2 POP2 pairs over two longs
+    public static byte[] dup2x2(int count) {
+        return dup2x2(count, CodeTransform.ACCEPT_ALL);
+    }
+
+    public static byte[] dup2x2(int count, CodeTransform transform) {
+        return build("Dup2X2", MethodTypeDesc.of(CD_long), transform, cob -> {
+            cob.lconst_1();
+            cob.lconst_1();
+            for (int i = 0; i < count; ++i) {
+                cob.dup2_x2();
+                cob.pop2();
+            }
+            cob.ladd();
+            cob.lreturn();
+        });
+    }
+
+    // count GOTOs each followed by length labels not yet used then the GOTO target
+    //     so each GOTO leaves a chain of length after goto labels
+    public static byte[] afterGotoLabels(int count, int length) {
+        return afterGotoLabels(count, length, CodeTransform.ACCEPT_ALL);
+    }
+
+    public static byte[] afterGotoLabels(int count, int length, CodeTransform transform) {
+        return buildWithoutStackMaps("AfterGotoLabels", MethodTypeDesc.of(CD_void, CD_int), transform, cob -> {
+            for (int i = 0; i < count; ++i) {
+                Label target = cob.newLabel();
+                cob.goto_(target);
+                for (int j = 0; j < length; ++j) {
+                    cob.labelBinding(cob.newLabel());
+                }
+                cob.labelBinding(target);
+                cob.iinc(0, 1);
+            }
+            cob.return_();
+        });
+    }
+
+    // count consecutive try blocks each with its own handler
+    //     the handler is declared first so that a transform knows it before its label is bound
+    public static byte[] exceptionHandlers(int count) {
+        return exceptionHandlers(count, CodeTransform.ACCEPT_ALL);
+    }
+
+    public static byte[] exceptionHandlers(int count, CodeTransform transform) {
+        return buildWithoutStackMaps("ExceptionHandlers", MethodTypeDesc.of(CD_void, CD_int), transform, cob -> {
+            for (int i = 0; i < count; ++i) {
+                Label start = cob.newLabel();
+                Label end = cob.newLabel();
+                Label handler = cob.newLabel();
+                Label after = cob.newLabel();
+                cob.exceptionCatch(start, end, handler, CD_Exception);
+                cob.labelBinding(start);
+                cob.iload(0);
+                cob.iconst_1();
+                cob.idiv();
+                cob.istore(0);
+                cob.labelBinding(end);
+                cob.goto_(after);
+                cob.labelBinding(handler);
+                cob.pop();
+                cob.labelBinding(after);
+            }
+            cob.return_();
+        });
+    }
+
+    // count GOTOs each followed by padding unreachable xCONST_0 (of each kind in turn)
+    //     that define the stack at the next label, which is the GOTO target
+    public static byte[] gotoPadding(int count, int padding) {
+        return gotoPadding(count, padding, CodeTransform.ACCEPT_ALL);
+    }
+
+    public static byte[] gotoPadding(int count, int padding, CodeTransform transform) {
+        return buildWithoutStackMaps("GotoPadding", MethodTypeDesc.of(CD_void), transform, cob -> {
+            for (int i = 0; i < count; ++i) {
+                Label target = cob.newLabel();
+                for (int j = 0; j < padding; ++j) {
+                    cob.with(ConstantInstruction.ofIntrinsic(PADDING[j % PADDING.length][0]));
+                }
+                cob.goto_(target);
+                for (int j = 0; j < padding; ++j) {
+                    cob.with(ConstantInstruction.ofIntrinsic(PADDING[j % PADDING.length][1]));
+                }
+                cob.labelBinding(target);
+                for (int j = padding - 1; j >= 0; --j) {
+                    cob.with(StackInstruction.of(PADDING[j % PADDING.length][2]));
+                }
+            }
+            cob.return_();
+        });
+    }
+
+    // count GOTOs each followed by padding unreachable xCONST_0 (of each kind in turn), a label that is not
+    //     a branch target (so the code after it, which pops the padding, is unreachable) then the GOTO target
+    //         the label starts a local variable scope so that it is also in the parsed code
+    public static byte[] paddedDeadLabels(int count, int padding) {
+        return paddedDeadLabels(count, padding, CodeTransform.ACCEPT_ALL);
+    }
+
+    public static byte[] paddedDeadLabels(int count, int padding, CodeTransform transform) {
+        return buildWithoutStackMaps("PaddedDeadLabels", MethodTypeDesc.of(CD_void, CD_int), transform, cob -> {
+            for (int i = 0; i < count; ++i) {
+                Label target = cob.newLabel();
+                Label dead = cob.newLabel();
+                cob.goto_(target);
+                for (int j = 0; j < padding; ++j) {
+                    cob.with(ConstantInstruction.ofIntrinsic(PADDING[j % PADDING.length][1]));
+                }
+                cob.labelBinding(dead);
+                cob.localVariable(0, "i", CD_int, dead, target);
+                for (int j = padding - 1; j >= 0; --j) {
+                    cob.with(StackInstruction.of(PADDING[j % PADDING.length][2]));
+                }
+                cob.labelBinding(target);
+                cob.iinc(0, 1);
+            }
+            cob.return_();
+        });
+    }
+
+}
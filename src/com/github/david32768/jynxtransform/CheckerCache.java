@@ -0,0 +1,273 @@
+package com.github.david32768.jynxtransform;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.lang.classfile.ClassTransform;
+import java.lang.classfile.CodeModel;
+import java.lang.classfile.MethodModel;
+import java.lang.classfile.attribute.CodeAttribute;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// bounded LRU cache of JynxStackChecker results that can be saved to and loaded from a file
+//     a method is keyed by a digest of the class constant pool, its Code attribute
+//         (bytecode, exception table and attributes) and the checker version
+//         the attributes are included as the labels of their ranges are elements seen by the checker
+//     a hit replays the checker's dropped elements instead of simulating the stack
+//         (they are element indices so a file is only used by the JDK build that wrote it,
+//          as the order of the elements of a CodeModel may differ between builds)
+//     safe for concurrent use by many threads
+public class CheckerCache {
+
+    private static final int MAGIC = 0x4A594E58; // JYNX
+    private static final int FORMAT = 3;
+    private static final String JDK_VERSION = Runtime.version().toString();
+    private static final int MAX_DROPPED = 1 << 16;
+    private static final String DIGEST = "SHA-256";
+    private static final int[] NONE_DROPPED = new int[0];
+
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(DIGEST);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    private record Key(long high, long low) {}
+
+    // offset and length of the Code attribute (excluding name and length) of each method
+    private record ClassLayout(byte[] poolDigest, Map<String, int[]> codeAttributes) {}
+
+    private final int maxEntries;
+    private final Map<Key, int[]> entries;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    public CheckerCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            String msg = String.format("max entries must be positive but is %d", maxEntries);
+            throw new IllegalArgumentException(msg);
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+                return size() > CheckerCache.this.maxEntries;
+            }
+        };
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    // returns empty cache if file does not exist, is truncated or corrupt
+    //     or was written by a different checker version or JDK build
+    public static CheckerCache load(Path path, int maxEntries) throws IOException {
+        var cache = new CheckerCache(maxEntries);
+        if (!Files.exists(path)) {
+            return cache;
+        }
+        try (var dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (dis.readInt() != MAGIC || dis.readInt() != FORMAT || dis.readInt() != JynxStackChecker.VERSION
+                    || !dis.readUTF().equals(JDK_VERSION)) {
+                return cache;
+            }
+            int count = dis.readInt();
+            for (int i = 0; i < count; ++i) {
+                var key = new Key(dis.readLong(), dis.readLong());
+                int length = dis.readInt();
+                if (length < 0 || length > MAX_DROPPED) {
+                    return new CheckerCache(maxEntries);
+                }
+                int[] dropped = new int[length];
+                for (int j = 0; j < dropped.length; ++j) {
+                    dropped[j] = dis.readInt();
+                }
+                cache.put(key, dropped);
+            }
+        } catch (EOFException | UTFDataFormatException ex) {
+            return new CheckerCache(maxEntries);
+        }
+        return cache;
+    }
+
+    public synchronized void save(Path path) throws IOException {
+        var tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (var dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(FORMAT);
+            dos.writeInt(JynxStackChecker.VERSION);
+            dos.writeUTF(JDK_VERSION);
+            dos.writeInt(entries.size());
+            for (var entry : entries.entrySet()) {
+                dos.writeLong(entry.getKey().high());
+                dos.writeLong(entry.getKey().low());
+                int[] dropped = entry.getValue();
+                dos.writeInt(dropped.length);
+                for (int index : dropped) {
+                    dos.writeInt(index);
+                }
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized int[] get(Key key) {
+        return entries.get(key);
+    }
+
+    private synchronized void put(Key key, int[] dropped) {
+        entries.put(key, dropped.length == 0? NONE_DROPPED: dropped);
+    }
+
+    // checker must not be used concurrently; the returned transform is for the class with these bytes
+    public ClassTransform transform(byte[] classBytes, JynxStackChecker checker) {
+        var layout = layoutOf(classBytes);
+        return (clb, cle) -> {
+            if (cle instanceof MethodModel mm) {
+                int[] attribute = layout.codeAttributes().get(mm.methodName().stringValue()
+                        + mm.methodType().stringValue());
+                clb.transformMethod(mm, (mb, me) -> {
+                    if (me instanceof CodeAttribute code && attribute != null) {
+                        var key = keyOf(layout.poolDigest(), classBytes, attribute);
+                        int[] dropped = get(key);
+                        if (dropped == null) {
+                            misses.increment();
+                            mb.transformCode(code, checker);
+                            put(key, checker.droppedElements());
+                        } else {
+                            hits.increment();
+                            mb.transformCode(code, new DroppingTransform(dropped));
+                        }
+                    } else if (me instanceof CodeModel code) {
+                        mb.transformCode(code, checker);
+                    } else {
+                        mb.with(me);
+                    }
+                });
+            } else {
+                clb.with(cle);
+            }
+        };
+    }
+
+    // digest of class file up to the end of the constant pool and where each Code attribute is
+    private static ClassLayout layoutOf(byte[] classBytes) {
+        var bb = ByteBuffer.wrap(classBytes);
+        int count = Short.toUnsignedInt(bb.getShort(8));
+        int[] utf8Offsets = new int[count];
+        int offset = 10;
+        for (int i = 1; i < count; ++i) {
+            int tag = Byte.toUnsignedInt(bb.get(offset));
+            if (tag == 1) {
+                utf8Offsets[i] = offset;
+            }
+            offset += 1 + switch (tag) {
+                case 1 -> 2 + Short.toUnsignedInt(bb.getShort(offset + 1)); // Utf8
+                case 7, 8, 16, 19, 20 -> 2; // Class, String, MethodType, Module, Package
+                case 15 -> 3; // MethodHandle
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> 4;
+                case 5, 6 -> { // Long, Double take two entries
+                    ++i;
+                    yield 8;
+                }
+                default -> {
+                    String msg = String.format("unknown constant pool tag %d at offset %d", tag, offset);
+                    throw new IllegalArgumentException(msg);
+                }
+            };
+        }
+        var md = DIGESTS.get();
+        md.update(classBytes, 0, offset);
+        byte[] poolDigest = md.digest();
+        offset += 6; // access_flags, this_class, super_class
+        offset += 2 + 2 * Short.toUnsignedInt(bb.getShort(offset)); // interfaces
+        int fields = Short.toUnsignedInt(bb.getShort(offset));
+        offset += 2;
+        for (int i = 0; i < fields; ++i) {
+            offset = skipAttributes(bb, offset + 6);
+        }
+        Map<String, int[]> codeAttributes = new HashMap<>();
+        int methods = Short.toUnsignedInt(bb.getShort(offset));
+        offset += 2;
+        for (int i = 0; i < methods; ++i) {
+            String name = utf8(bb, utf8Offsets, bb.getShort(offset + 2));
+            String type = utf8(bb, utf8Offsets, bb.getShort(offset + 4));
+            offset += 6;
+            int attributes = Short.toUnsignedInt(bb.getShort(offset));
+            offset += 2;
+            for (int j = 0; j < attributes; ++j) {
+                int length = bb.getInt(offset + 2);
+                if ("Code".equals(utf8(bb, utf8Offsets, bb.getShort(offset)))) {
+                    codeAttributes.put(name + type, new int[]{offset + 6, length});
+                }
+                offset += 6 + length;
+            }
+        }
+        return new ClassLayout(poolDigest, codeAttributes);
+    }
+
+    private static int skipAttributes(ByteBuffer bb, int offset) {
+        int attributes = Short.toUnsignedInt(bb.getShort(offset));
+        offset += 2;
+        for (int i = 0; i < attributes; ++i) {
+            offset += 6 + bb.getInt(offset + 2);
+        }
+        return offset;
+    }
+
+    // null if not a Utf8 entry
+    private static String utf8(ByteBuffer bb, int[] utf8Offsets, short index) {
+        int i = Short.toUnsignedInt(index);
+        if (i >= utf8Offsets.length || utf8Offsets[i] == 0) {
+            return null;
+        }
+        int offset = utf8Offsets[i];
+        int length = Short.toUnsignedInt(bb.getShort(offset + 1));
+        var data = new DataInputStream(new ByteArrayInputStream(bb.array(), offset + 1, length + 2));
+        try {
+            return data.readUTF();
+        } catch (IOException ex) {
+            String msg = String.format("invalid Utf8 constant %d at offset %d", i, offset);
+            throw new IllegalArgumentException(msg, ex);
+        }
+    }
+
+    private static Key keyOf(byte[] poolDigest, byte[] classBytes, int[] attribute) {
+        var md = DIGESTS.get();
+        var bb = ByteBuffer.allocate(4);
+        bb.putInt(JynxStackChecker.VERSION);
+        md.update(bb.flip());
+        md.update(poolDigest);
+        md.update(classBytes, attribute[0], attribute[1]);
+        var digest = ByteBuffer.wrap(md.digest());
+        return new Key(digest.getLong(), digest.getLong());
+    }
+
+}
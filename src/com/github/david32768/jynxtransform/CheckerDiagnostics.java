@@ -0,0 +1,147 @@
+package com.github.david32768.jynxtransform;
+
+import java.io.PrintStream;
+import java.lang.classfile.ClassBuilder;
+import java.lang.classfile.ClassElement;
+import java.lang.classfile.ClassModel;
+import java.lang.classfile.ClassTransform;
+import java.lang.classfile.MethodModel;
+import java.lang.classfile.MethodTransform;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+// batch mode for JynxStackChecker: a method that fails is recorded and passed through unchanged
+//     so that one run over a jar reports every failing method
+//     at most maxPerClass diagnostics are kept for a class; the rest are only counted
+//     methods with nothing dropped are also passed through unchanged
+//     safe for concurrent use by many threads
+public class CheckerDiagnostics {
+
+    // expected and actual are empty and the stack at the failure if the failure was not a stack mismatch
+    public record Diagnostic(String className, String method, int bci, String message,
+            String expected, String actual) {
+
+        @Override
+        public String toString() {
+            String result = String.format("%s.%s bci %d: %s", className, method, bci, message);
+            if (!expected.isEmpty()) {
+                result += String.format(" (expected %s actual %s)", expected, actual);
+            }
+            return result;
+        }
+    }
+
+    private final int maxPerClass;
+    private final List<Diagnostic> diagnostics;
+    private final LongAdder suppressed;
+    private final LongAdder methods;
+
+    public CheckerDiagnostics(int maxPerClass) {
+        if (maxPerClass <= 0) {
+            String msg = String.format("max diagnostics per class must be positive but is %d", maxPerClass);
+            throw new IllegalArgumentException(msg);
+        }
+        this.maxPerClass = maxPerClass;
+        this.diagnostics = new ArrayList<>();
+        this.suppressed = new LongAdder();
+        this.methods = new LongAdder();
+    }
+
+    private synchronized void add(List<Diagnostic> classDiagnostics) {
+        diagnostics.addAll(classDiagnostics);
+    }
+
+    // ordered by class name then method order in class
+    public synchronized List<Diagnostic> diagnostics() {
+        return diagnostics.stream()
+                .sorted(Comparator.comparing(Diagnostic::className))
+                .toList();
+    }
+
+    // number of failing methods not in diagnostics() because of the limit per class
+    public long suppressed() {
+        return suppressed.sum();
+    }
+
+    public long failedMethods() {
+        return methods.sum();
+    }
+
+    public void report(PrintStream ps) {
+        var list = diagnostics();
+        for (var diagnostic : list) {
+            ps.println(diagnostic);
+        }
+        ps.format("%d methods failed (%d diagnostics not shown, limit %d per class)%n",
+                failedMethods(), suppressed(), maxPerClass);
+    }
+
+    // checker must not be used concurrently; the returned transform is for one class
+    public ClassTransform transform(JynxStackChecker checker) {
+        return new ClassDiagnostics(checker);
+    }
+
+    private final class ClassDiagnostics implements ClassTransform {
+
+        private final JynxStackChecker checker;
+        private final List<Diagnostic> classDiagnostics;
+
+        private ClassDiagnostics(JynxStackChecker checker) {
+            this.checker = checker;
+            this.classDiagnostics = new ArrayList<>();
+        }
+
+        @Override
+        public void accept(ClassBuilder builder, ClassElement element) {
+            if (element instanceof MethodModel mm && mm.code().isPresent()) {
+                StackAnalysis analysis;
+                try {
+                    analysis = checker.analyze(mm.code().get());
+                } catch (IllegalArgumentException | IllegalStateException ex) {
+                    record(mm, ex);
+                    builder.with(mm);
+                    return;
+                }
+                if (analysis.droppedCount() == 0) {
+                    builder.with(mm);
+                } else {
+                    var dropping = new DroppingTransform(analysis.droppedElements());
+                    builder.transformMethod(mm, MethodTransform.transformingCode(dropping));
+                }
+            } else {
+                builder.with(element);
+            }
+        }
+
+        private void record(MethodModel mm, RuntimeException ex) {
+            methods.increment();
+            if (classDiagnostics.size() == maxPerClass) {
+                suppressed.increment();
+                return;
+            }
+            String className = mm.parent()
+                    .map(ClassModel::thisClass)
+                    .map(ce -> ce.asInternalName())
+                    .orElse("");
+            String method = mm.methodName().stringValue() + mm.methodType().stringValue();
+            String expected = "";
+            String actual = checker.currentStack();
+            if (ex instanceof StackMismatchException mismatch) {
+                expected = mismatch.expected();
+                actual = mismatch.actual();
+            }
+            classDiagnostics.add(new Diagnostic(className, method, checker.bci(), ex.getMessage(),
+                    expected, actual));
+        }
+
+        @Override
+        public void atEnd(ClassBuilder builder) {
+            if (!classDiagnostics.isEmpty()) {
+                add(classDiagnostics);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.github.david32768.jynxtransform;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// JFR event for each method checked by JynxStackChecker that takes longer than the threshold
+@Name("com.github.david32768.jynxtransform.CheckerMethod")
+@Label("Checker Method")
+@Category("JynxTransform")
+@Description("Method checked by JynxStackChecker")
+@Threshold("1 ms")
+@StackTrace(false)
+final class CheckerMethodEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Instructions")
+    int instructions;
+
+    @Label("Dropped Constants")
+    int droppedConstants;
+
+    @Label("After Goto Labels")
+    @Description("Labels whose stack was set by the instruction after them")
+    int afterGotoLabels;
+
+    @Label("Labels")
+    int labels;
+
+    @Label("Max Stack Slots")
+    int maxStackSlots;
+
+}
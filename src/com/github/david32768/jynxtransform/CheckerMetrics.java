@@ -0,0 +1,147 @@
+package com.github.david32768.jynxtransform;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// counters and histograms of all JynxStackChecker runs in the JVM
+//     a checker adds its counts once per method so that many checkers on different threads do not contend
+public final class CheckerMetrics implements CheckerMetricsMXBean {
+
+    public static final String OBJECT_NAME = "com.github.david32768.jynxtransform:type=CheckerMetrics";
+
+    private static final CheckerMetrics GLOBAL = new CheckerMetrics();
+
+    private final LongAdder methods;
+    private final LongAdder failedMethods;
+    private final LongAdder instructions;
+    private final LongAdder droppedConstants;
+    private final LongAdder afterGotoLabels;
+    private final Log2Histogram nanos;
+    private final Log2Histogram stackSlots;
+    private final Log2Histogram labels;
+
+    private CheckerMetrics() {
+        this.methods = new LongAdder();
+        this.failedMethods = new LongAdder();
+        this.instructions = new LongAdder();
+        this.droppedConstants = new LongAdder();
+        this.afterGotoLabels = new LongAdder();
+        this.nanos = new Log2Histogram();
+        this.stackSlots = new Log2Histogram();
+        this.labels = new Log2Histogram();
+    }
+
+    public static CheckerMetrics global() {
+        return GLOBAL;
+    }
+
+    // registers the global metrics with the platform MBean server (if not already registered)
+    public static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(GLOBAL, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException ex) {
+            // already registered
+        } catch (JMException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    void recordMethod(long elapsedNanos, int instructionCount, int dropped, int afterGoto,
+            int labelCount, int maxSlots) {
+        methods.increment();
+        instructions.add(instructionCount);
+        droppedConstants.add(dropped);
+        afterGotoLabels.add(afterGoto);
+        nanos.record(elapsedNanos);
+        stackSlots.record(maxSlots);
+        labels.record(labelCount);
+    }
+
+    void recordFailure() {
+        failedMethods.increment();
+    }
+
+    @Override
+    public long getMethods() {
+        return methods.sum();
+    }
+
+    @Override
+    public long getFailedMethods() {
+        return failedMethods.sum();
+    }
+
+    @Override
+    public long getInstructions() {
+        return instructions.sum();
+    }
+
+    @Override
+    public long getDroppedConstants() {
+        return droppedConstants.sum();
+    }
+
+    @Override
+    public long getAfterGotoLabels() {
+        return afterGotoLabels.sum();
+    }
+
+    @Override
+    public long getTotalNanos() {
+        return nanos.sum();
+    }
+
+    @Override
+    public long getMaxNanos() {
+        return nanos.max();
+    }
+
+    @Override
+    public long getMaxStackSlots() {
+        return stackSlots.max();
+    }
+
+    @Override
+    public long getMaxLabels() {
+        return labels.max();
+    }
+
+    @Override
+    public long[] getNanosHistogram() {
+        return nanos.counts();
+    }
+
+    @Override
+    public long[] getStackSlotsHistogram() {
+        return stackSlots.counts();
+    }
+
+    @Override
+    public long[] getLabelsHistogram() {
+        return labels.counts();
+    }
+
+    @Override
+    public void reset() {
+        methods.reset();
+        failedMethods.reset();
+        instructions.reset();
+        droppedConstants.reset();
+        afterGotoLabels.reset();
+        nanos.reset();
+        stackSlots.reset();
+        labels.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("methods %d (failed %d) instructions %d dropped %d after goto labels %d%n"
+                + "time %d ms (max method %d us) max stack slots %d max labels %d",
+                getMethods(), getFailedMethods(), getInstructions(), getDroppedConstants(), getAfterGotoLabels(),
+                getTotalNanos() / 1_000_000, getMaxNanos() / 1_000, getMaxStackSlots(), getMaxLabels());
+    }
+
+}
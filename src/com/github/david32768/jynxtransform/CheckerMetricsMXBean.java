@@ -0,0 +1,33 @@
+package com.github.david32768.jynxtransform;
+
+// JMX view of CheckerMetrics
+//     histograms are counts in power of two buckets: [0], [1], [2,3], [4,7] ...
+public interface CheckerMetricsMXBean {
+
+    long getMethods();
+
+    long getFailedMethods();
+
+    long getInstructions();
+
+    long getDroppedConstants();
+
+    long getAfterGotoLabels();
+
+    long getTotalNanos();
+
+    long getMaxNanos();
+
+    long getMaxStackSlots();
+
+    long getMaxLabels();
+
+    long[] getNanosHistogram();
+
+    long[] getStackSlotsHistogram();
+
+    long[] getLabelsHistogram();
+
+    void reset();
+
+}
@@ -0,0 +1,33 @@
+package com.github.david32768.jynxtransform;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// JFR event for each element checked by JynxStackChecker in trace mode (disabled by default)
+@Name("com.github.david32768.jynxtransform.CheckerTrace")
+@Label("Checker Trace")
+@Category("JynxTransform")
+@Description("Element checked by JynxStackChecker in trace mode")
+@Enabled(false)
+@StackTrace(false)
+final class CheckerTraceEvent extends Event {
+
+    @Label("Bytecode Index")
+    int bci;
+
+    @Label("Element")
+    String element;
+
+    @Label("Stack Depth")
+    @Description("Stack depth in slots after the element")
+    int depth;
+
+    @Label("Stack Hash")
+    int stackHash;
+
+}
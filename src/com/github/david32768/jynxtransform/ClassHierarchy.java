@@ -0,0 +1,50 @@
+package com.github.david32768.jynxtransform;
+
+import java.io.IOException;
+import java.lang.constant.ClassDesc;
+import java.nio.file.Path;
+import java.util.List;
+
+// class hierarchy used to merge and check assignability of reference types
+public interface ClassHierarchy {
+
+    // superclass is null for java.lang.Object and interfaces
+    record ClassInfo(boolean isInterface, ClassDesc superclass) {}
+
+    // desc is a class or interface (not an array); returns null if not known
+    ClassInfo classInfo(ClassDesc desc);
+
+    // knows no classes so different classes merge to java.lang.Object
+    static ClassHierarchy ofObjectOnly() {
+        return _ -> null;
+    }
+
+    // classes are read from the class files of directories and jars
+    static ClassHierarchy ofPaths(List<Path> paths) throws IOException {
+        return new ClassPathHierarchy(paths);
+    }
+
+    static ClassHierarchy ofClassLoading(ClassLoader loader) {
+        return desc -> {
+            String descriptor = desc.descriptorString();
+            String name = descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+            try {
+                var klass = Class.forName(name, false, loader);
+                var superclass = klass.getSuperclass();
+                return new ClassInfo(klass.isInterface(),
+                        superclass == null? null: superclass.describeConstable().orElseThrow());
+            } catch (ClassNotFoundException | LinkageError ex) {
+                return null;
+            }
+        };
+    }
+
+    // other is used for classes this does not know
+    default ClassHierarchy orElse(ClassHierarchy other) {
+        return desc -> {
+            var info = classInfo(desc);
+            return info == null? other.classInfo(desc): info;
+        };
+    }
+
+}
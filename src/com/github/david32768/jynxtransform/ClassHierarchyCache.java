@@ -0,0 +1,90 @@
+package com.github.david32768.jynxtransform;
+
+import java.lang.constant.ClassDesc;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// bounded LRU cache of a ClassHierarchy (including classes it does not know)
+//     the entries are divided between STRIPES maps each with its own lock
+//         so that threads looking up different classes rarely contend
+//     a class missing from the cache is looked up without holding a lock
+//         (so may be looked up more than once by concurrent threads)
+//     intended to be shared by all threads and all runs in a JVM
+public final class ClassHierarchyCache implements ClassHierarchy {
+
+    private static final int STRIPES = 16;
+    private static final ClassInfo UNKNOWN = new ClassInfo(false, null);
+
+    private final ClassHierarchy hierarchy;
+    private final Map<ClassDesc, ClassInfo>[] stripes;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    @SuppressWarnings("unchecked")
+    public ClassHierarchyCache(ClassHierarchy hierarchy, int maxEntries) {
+        if (maxEntries < STRIPES) {
+            String msg = String.format("max entries must be at least %d but is %d", STRIPES, maxEntries);
+            throw new IllegalArgumentException(msg);
+        }
+        this.hierarchy = hierarchy;
+        this.stripes = new Map[STRIPES];
+        int maxPerStripe = maxEntries / STRIPES;
+        for (int i = 0; i < STRIPES; ++i) {
+            stripes[i] = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ClassDesc, ClassInfo> eldest) {
+                    return size() > maxPerStripe;
+                }
+            };
+        }
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    private Map<ClassDesc, ClassInfo> stripe(ClassDesc desc) {
+        int hash = desc.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    @Override
+    public ClassInfo classInfo(ClassDesc desc) {
+        var stripe = stripe(desc);
+        ClassInfo info;
+        synchronized (stripe) {
+            info = stripe.get(desc);
+        }
+        if (info != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            info = hierarchy.classInfo(desc);
+            if (info == null) {
+                info = UNKNOWN;
+            }
+            synchronized (stripe) {
+                stripe.put(desc, info);
+            }
+        }
+        return info == UNKNOWN? null: info;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (var stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.github.david32768.jynxtransform;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.constantpool.ClassEntry;
+import java.lang.constant.ClassDesc;
+import java.lang.reflect.AccessFlag;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// class hierarchy read from the class files of directories and jars (searched in order)
+//     jars are memory mapped and their entries indexed when opened
+//     only the header of a class file is parsed; no class is loaded
+//     safe for concurrent use by many threads
+final class ClassPathHierarchy implements ClassHierarchy {
+
+    private static final String CLASS_SUFFIX = ".class";
+    private static final ClassFile CLASS_FILE = ClassFile.of();
+
+    private record Jar(MappedJar jar, Map<String, MappedJar.Entry> classes) {}
+
+    private final List<Path> directories;
+    private final List<Jar> jars;
+    private final List<Object> order;
+
+    ClassPathHierarchy(List<Path> paths) throws IOException {
+        this.directories = new ArrayList<>();
+        this.jars = new ArrayList<>();
+        this.order = new ArrayList<>();
+        for (var path : paths) {
+            if (Files.isDirectory(path)) {
+                directories.add(path);
+                order.add(path);
+            } else {
+                var jar = MappedJar.open(path);
+                Map<String, MappedJar.Entry> classes = new HashMap<>();
+                for (var entry : jar.entries()) {
+                    if (!entry.isDirectory() && entry.name().endsWith(CLASS_SUFFIX)) {
+                        classes.putIfAbsent(entry.name(), entry);
+                    }
+                }
+                var indexed = new Jar(jar, classes);
+                jars.add(indexed);
+                order.add(indexed);
+            }
+        }
+    }
+
+    @Override
+    public ClassInfo classInfo(ClassDesc desc) {
+        String descriptor = desc.descriptorString();
+        String name = descriptor.substring(1, descriptor.length() - 1) + CLASS_SUFFIX;
+        try {
+            for (var element : order) {
+                byte[] bytes = switch (element) {
+                    case Path directory -> read(directory.resolve(name));
+                    case Jar jar -> {
+                        var entry = jar.classes().get(name);
+                        yield entry == null? null: jar.jar().read(entry);
+                    }
+                    default -> throw new AssertionError();
+                };
+                if (bytes != null) {
+                    return infoOf(bytes);
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return null;
+    }
+
+    private static byte[] read(Path path) throws IOException {
+        try {
+            return Files.readAllBytes(path);
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+
+    private static ClassInfo infoOf(byte[] bytes) {
+        var model = CLASS_FILE.parse(bytes);
+        boolean isInterface = model.flags().has(AccessFlag.INTERFACE);
+        ClassDesc superclass = isInterface? null: model.superclass()
+                .map(ClassEntry::asSymbol)
+                .orElse(null);
+        return new ClassInfo(isInterface, superclass);
+    }
+
+}
@@ -0,0 +1,345 @@
+package com.github.david32768.jynxtransform;
+
+import static java.lang.classfile.Opcode.*;
+import java.lang.classfile.instruction.*;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.CodeTransform;
+import java.lang.classfile.Instruction;
+import java.lang.classfile.Opcode;
+import java.lang.constant.ConstantDesc;
+import java.lang.constant.ConstantDescs;
+import java.util.ArrayList;
+import java.util.List;
+
+// Folds operators, conversions and conditional branches whose operands are known constants
+//     the stack is simulated as in JynxStackChecker but an entry is its constant value
+//         (from xCONST_n, BIPUSH, SIPUSH and LDC of a number) rather than its TypeKind
+//     constants are held back until an instruction that cannot be folded (or a pseudo instruction) is reached
+//         so values are only known within a run of instructions without labels
+//     a division or remainder by integer zero is not folded
+//     a branch that is always taken becomes GOTO and one that is never taken is removed
+//         the code after such a GOTO is unreachable and should be removed by UnreachableCodeEliminator
+public class ConstantFolder implements CodeTransform {
+
+    public enum Fold {
+        OPERATOR,
+        CONVERSION,
+        BRANCH_TAKEN,
+        BRANCH_NOT_TAKEN,
+        ;
+    }
+
+    // inst is null if value is the result of a fold
+    private record Known(Instruction inst, ConstantDesc value) {}
+
+    private static final ConstantInstruction[] INT_CONSTANTS = {
+        ConstantInstruction.ofIntrinsic(ICONST_M1),
+        ConstantInstruction.ofIntrinsic(ICONST_0),
+        ConstantInstruction.ofIntrinsic(ICONST_1),
+        ConstantInstruction.ofIntrinsic(ICONST_2),
+        ConstantInstruction.ofIntrinsic(ICONST_3),
+        ConstantInstruction.ofIntrinsic(ICONST_4),
+        ConstantInstruction.ofIntrinsic(ICONST_5),
+    };
+
+    private final RewriteCounts<Fold> counts;
+    private final List<Known> known;
+
+    public ConstantFolder() {
+        this(newCounts());
+    }
+
+    public ConstantFolder(RewriteCounts<Fold> counts) {
+        this.counts = counts;
+        this.known = new ArrayList<>();
+    }
+
+    public static RewriteCounts<Fold> newCounts() {
+        return new RewriteCounts<>("constant folds", Fold.class);
+    }
+
+    public RewriteCounts<Fold> counts() {
+        return counts;
+    }
+
+    @Override
+    public void atStart(CodeBuilder builder) {
+        known.clear();
+    }
+
+    @Override
+    public void accept(CodeBuilder builder, CodeElement element) {
+        if (element instanceof Instruction inst && fold(builder, inst)) {
+            return;
+        }
+        flush(builder);
+        builder.with(element);
+    }
+
+    @Override
+    public void atEnd(CodeBuilder builder) {
+        flush(builder);
+    }
+
+    private void flush(CodeBuilder builder) {
+        for (var k : known) {
+            if (k.inst() == null) {
+                loadConstant(builder, k.value());
+            } else {
+                builder.with(k.inst());
+            }
+        }
+        known.clear();
+    }
+
+    private static void loadConstant(CodeBuilder builder, ConstantDesc value) {
+        switch (value) {
+            case Integer i when i >= -1 && i <= 5 -> builder.with(INT_CONSTANTS[i + 1]);
+            case Integer i when i == (byte)(int)i -> builder.bipush(i);
+            case Integer i when i == (short)(int)i -> builder.sipush(i);
+            case Long l when l == 0L -> builder.lconst_0();
+            case Long l when l == 1L -> builder.lconst_1();
+            case Float f when Float.floatToRawIntBits(f) == 0 -> builder.fconst_0();
+            case Float f when f == 1.0f -> builder.fconst_1();
+            case Float f when f == 2.0f -> builder.fconst_2();
+            case Double d when Double.doubleToRawLongBits(d) == 0L -> builder.dconst_0();
+            case Double d when d == 1.0 -> builder.dconst_1();
+            default -> builder.ldc(builder.constantPool().loadableConstantEntry(value));
+        }
+    }
+
+    private ConstantDesc top(int index) {
+        return known.get(known.size() - 1 - index).value();
+    }
+
+    private void replace(int count, ConstantDesc result, Fold fold) {
+        for (int i = 0; i < count; ++i) {
+            known.removeLast();
+        }
+        if (result != null) {
+            known.add(new Known(null, result));
+        }
+        counts.increment(fold);
+    }
+
+    // returns true if inst has been absorbed
+    private boolean fold(CodeBuilder builder, Instruction inst) {
+        var op = inst.opcode();
+        switch (op.kind()) {
+            case CONSTANT -> {
+                if (op == ACONST_NULL) {
+                    known.add(new Known(inst, ConstantDescs.NULL));
+                    return true;
+                }
+                var value = ((ConstantInstruction)inst).constantValue();
+                if (value instanceof Integer || value instanceof Long
+                        || value instanceof Float || value instanceof Double) {
+                    known.add(new Known(inst, value));
+                    return true;
+                }
+            }
+            case OPERATOR -> {
+                ConstantDesc result = null;
+                if (known.size() >= 2) {
+                    result = binary(op, top(1), top(0));
+                    if (result != null) {
+                        replace(2, result, Fold.OPERATOR);
+                        return true;
+                    }
+                }
+                if (!known.isEmpty()) {
+                    result = unary(op, top(0));
+                    if (result != null) {
+                        replace(1, result, Fold.OPERATOR);
+                        return true;
+                    }
+                }
+            }
+            case CONVERT -> {
+                if (!known.isEmpty()) {
+                    var result = convert(op, top(0));
+                    if (result != null) {
+                        replace(1, result, Fold.CONVERSION);
+                        return true;
+                    }
+                }
+            }
+            case BRANCH -> {
+                var target = ((BranchInstruction)inst).target();
+                int operands = 0;
+                Boolean taken = null;
+                if (known.size() >= 2) {
+                    taken = compare(op, top(1), top(0));
+                    operands = 2;
+                }
+                if (taken == null && !known.isEmpty()) {
+                    taken = test(op, top(0));
+                    operands = 1;
+                }
+                if (taken != null) {
+                    replace(operands, null, taken? Fold.BRANCH_TAKEN: Fold.BRANCH_NOT_TAKEN);
+                    if (taken) {
+                        flush(builder);
+                        builder.goto_(target);
+                    }
+                    return true;
+                }
+            }
+            default -> {}
+        }
+        return false;
+    }
+
+    private static ConstantDesc binary(Opcode op, ConstantDesc first, ConstantDesc second) {
+        return switch (first) {
+            case Integer a when second instanceof Integer b -> switch (op) {
+                case IADD -> a + b;
+                case ISUB -> a - b;
+                case IMUL -> a * b;
+                case IDIV -> b == 0? null: a / b;
+                case IREM -> b == 0? null: a % b;
+                case ISHL -> a << b;
+                case ISHR -> a >> b;
+                case IUSHR -> a >>> b;
+                case IAND -> a & b;
+                case IOR -> a | b;
+                case IXOR -> a ^ b;
+                default -> null;
+            };
+            case Long a when second instanceof Long b -> switch (op) {
+                case LADD -> a + b;
+                case LSUB -> a - b;
+                case LMUL -> a * b;
+                case LDIV -> b == 0L? null: a / b;
+                case LREM -> b == 0L? null: a % b;
+                case LAND -> a & b;
+                case LOR -> a | b;
+                case LXOR -> a ^ b;
+                case LCMP -> Long.compare(a, b);
+                default -> null;
+            };
+            case Long a when second instanceof Integer b -> switch (op) {
+                case LSHL -> a << b;
+                case LSHR -> a >> b;
+                case LUSHR -> a >>> b;
+                default -> null;
+            };
+            case Float a when second instanceof Float b -> switch (op) {
+                case FADD -> a + b;
+                case FSUB -> a - b;
+                case FMUL -> a * b;
+                case FDIV -> a / b;
+                case FREM -> a % b;
+                case FCMPL -> compareFloating(a, b, -1);
+                case FCMPG -> compareFloating(a, b, 1);
+                default -> null;
+            };
+            case Double a when second instanceof Double b -> switch (op) {
+                case DADD -> a + b;
+                case DSUB -> a - b;
+                case DMUL -> a * b;
+                case DDIV -> a / b;
+                case DREM -> a % b;
+                case DCMPL -> compareFloating(a, b, -1);
+                case DCMPG -> compareFloating(a, b, 1);
+                default -> null;
+            };
+            default -> null;
+        };
+    }
+
+    // as fcmpx/dcmpx i.e. -0.0 == 0.0 (unlike Double.compare)
+    private static Integer compareFloating(double a, double b, int nan) {
+        return a < b? -1: a > b? 1: a == b? 0: nan;
+    }
+
+    private static ConstantDesc unary(Opcode op, ConstantDesc value) {
+        return switch (value) {
+            case Integer a when op == INEG -> -a;
+            case Long a when op == LNEG -> -a;
+            case Float a when op == FNEG -> -a;
+            case Double a when op == DNEG -> -a;
+            default -> null;
+        };
+    }
+
+    private static ConstantDesc convert(Opcode op, ConstantDesc value) {
+        return switch (value) {
+            case Integer a -> switch (op) {
+                case I2L -> (long)a;
+                case I2F -> (float)a;
+                case I2D -> (double)a;
+                case I2B -> (int)(byte)(int)a;
+                case I2C -> (int)(char)(int)a;
+                case I2S -> (int)(short)(int)a;
+                default -> null;
+            };
+            case Long a -> switch (op) {
+                case L2I -> (int)(long)a;
+                case L2F -> (float)a;
+                case L2D -> (double)a;
+                default -> null;
+            };
+            case Float a -> switch (op) {
+                case F2I -> (int)(float)a;
+                case F2L -> (long)(float)a;
+                case F2D -> (double)a;
+                default -> null;
+            };
+            case Double a -> switch (op) {
+                case D2I -> (int)(double)a;
+                case D2L -> (long)(double)a;
+                case D2F -> (float)(double)a;
+                default -> null;
+            };
+            default -> null;
+        };
+    }
+
+    private static Boolean compare(Opcode op, ConstantDesc first, ConstantDesc second) {
+        if (first instanceof Integer a && second instanceof Integer b) {
+            return switch (op) {
+                case IF_ICMPEQ -> a.intValue() == b.intValue();
+                case IF_ICMPNE -> a.intValue() != b.intValue();
+                case IF_ICMPLT -> a < b;
+                case IF_ICMPGE -> a >= b;
+                case IF_ICMPGT -> a > b;
+                case IF_ICMPLE -> a <= b;
+                default -> null;
+            };
+        }
+        if (first == ConstantDescs.NULL && second == ConstantDescs.NULL) {
+            return switch (op) {
+                case IF_ACMPEQ -> true;
+                case IF_ACMPNE -> false;
+                default -> null;
+            };
+        }
+        return null;
+    }
+
+    private static Boolean test(Opcode op, ConstantDesc value) {
+        if (value instanceof Integer a) {
+            return switch (op) {
+                case IFEQ -> a == 0;
+                case IFNE -> a != 0;
+                case IFLT -> a < 0;
+                case IFGE -> a >= 0;
+                case IFGT -> a > 0;
+                case IFLE -> a <= 0;
+                default -> null;
+            };
+        }
+        if (value == ConstantDescs.NULL) {
+            return switch (op) {
+                case IFNULL -> true;
+                case IFNONNULL -> false;
+                default -> null;
+            };
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.github.david32768.jynxtransform;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.CodeTransform;
+import java.util.List;
+
+// passes through all elements except those at the given (ascending) element indices
+//     used to replay the drops of an earlier JynxStackChecker run over the same code
+//     if elements is not null its element at the same index is passed instead of the one received
+//         (so that later transforms see the objects the checker analysed)
+final class DroppingTransform implements CodeTransform {
+
+    private final int[] dropped;
+    private final List<CodeElement> elements;
+    private int index;
+    private int next;
+
+    DroppingTransform(int[] dropped) {
+        this(dropped, null);
+    }
+
+    DroppingTransform(int[] dropped, List<CodeElement> elements) {
+        this.dropped = dropped;
+        this.elements = elements;
+        this.index = 0;
+        this.next = 0;
+    }
+
+    @Override
+    public void accept(CodeBuilder builder, CodeElement element) {
+        if (next < dropped.length && dropped[next] == index) {
+            ++next;
+        } else {
+            builder.with(elements == null? element: elements.get(index));
+        }
+        ++index;
+    }
+
+}
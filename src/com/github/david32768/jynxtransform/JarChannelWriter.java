@@ -0,0 +1,222 @@
+package com.github.david32768.jynxtransform;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// writes a jar (zip) file sequentially to a FileChannel
+//     entries are either already compressed data (passed through from a MappedJar)
+//     or deflated by the caller using deflate (which may be called from any thread)
+final class JarChannelWriter implements AutoCloseable {
+
+    private static final int LOCAL_SIG = 0x04034b50;
+    private static final int CENTRAL_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final int VERSION = 20;
+    private static final int ZIP64_VERSION = 45;
+    private static final int UTF8_FLAG = 0x0800;
+    private static final long U4_MAX = 0xffffffffL;
+    private static final int U2_MAX = 0xffff;
+
+    private static final int BUFFER_SIZE = 1 << 17;
+    private static final int INITIAL_DEFLATE_SIZE = 1 << 12;
+
+    private static final ThreadLocal<Deflater> DEFLATERS =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<byte[][]> DEFLATE_BUFFERS =
+            ThreadLocal.withInitial(() -> new byte[][]{new byte[INITIAL_DEFLATE_SIZE]});
+
+    record Deflated(int crc, long size, byte[] data) {}
+
+    private record CentralEntry(byte[] name, int method, int dosTime, int crc,
+            long compressedSize, long size, long offset) {}
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final List<CentralEntry> central;
+    private long position;
+
+    private JarChannelWriter(FileChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.central = new ArrayList<>();
+        this.position = 0;
+    }
+
+    static JarChannelWriter create(Path path) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new JarChannelWriter(channel);
+    }
+
+    static Deflated deflate(byte[] bytes) {
+        var crc = new CRC32();
+        crc.update(bytes);
+        var deflater = DEFLATERS.get();
+        var holder = DEFLATE_BUFFERS.get();
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        byte[] out = holder[0];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == out.length) {
+                out = Arrays.copyOf(out, 2 * out.length);
+                holder[0] = out;
+            }
+            length += deflater.deflate(out, length, out.length - length);
+        }
+        return new Deflated((int)crc.getValue(), bytes.length, Arrays.copyOf(out, length));
+    }
+
+    void write(String name, int dosTime, Deflated deflated) throws IOException {
+        write(name, MappedJar.DEFLATED, dosTime, deflated.crc(), deflated.size(),
+                ByteBuffer.wrap(deflated.data()));
+    }
+
+    void copy(MappedJar.Entry entry, MemorySegment raw) throws IOException {
+        write(entry.name(), entry.method(), entry.dosTime(), entry.crc(), entry.size(),
+                raw.asByteBuffer());
+    }
+
+    private void write(String name, int method, int dosTime, int crc, long size, ByteBuffer data)
+            throws IOException {
+        byte[] namebytes = name.getBytes(StandardCharsets.UTF_8);
+        long csize = data.remaining();
+        boolean zip64 = csize >= U4_MAX || size >= U4_MAX;
+        central.add(new CentralEntry(namebytes, method, dosTime, crc, csize, size, position));
+        ensure(30 + namebytes.length + 20);
+        buffer.putInt(LOCAL_SIG)
+                .putShort((short)(zip64? ZIP64_VERSION: VERSION))
+                .putShort((short)UTF8_FLAG)
+                .putShort((short)method)
+                .putInt(dosTime)
+                .putInt(crc)
+                .putInt((int)(zip64? U4_MAX: csize))
+                .putInt((int)(zip64? U4_MAX: size))
+                .putShort((short)namebytes.length)
+                .putShort((short)(zip64? 20: 0))
+                .put(namebytes);
+        if (zip64) {
+            buffer.putShort((short)ZIP64_EXTRA_ID)
+                    .putShort((short)16)
+                    .putLong(size)
+                    .putLong(csize);
+        }
+        flush();
+        position += writeFully(data);
+    }
+
+    private void ensure(int needed) throws IOException {
+        if (buffer.remaining() < needed) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        position += writeFully(buffer);
+        buffer.clear();
+    }
+
+    private long writeFully(ByteBuffer bb) throws IOException {
+        long written = 0;
+        while (bb.hasRemaining()) {
+            written += channel.write(bb);
+        }
+        return written;
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long start = position + buffer.position();
+        for (var entry : central) {
+            boolean bigsize = entry.size() >= U4_MAX;
+            boolean bigcsize = entry.compressedSize() >= U4_MAX;
+            boolean bigoffset = entry.offset() >= U4_MAX;
+            int extralen = (bigsize? 8: 0) + (bigcsize? 8: 0) + (bigoffset? 8: 0);
+            boolean zip64 = extralen != 0;
+            ensure(46 + entry.name().length + 4 + extralen);
+            buffer.putInt(CENTRAL_SIG)
+                    .putShort((short)(zip64? ZIP64_VERSION: VERSION))
+                    .putShort((short)(zip64? ZIP64_VERSION: VERSION))
+                    .putShort((short)UTF8_FLAG)
+                    .putShort((short)entry.method())
+                    .putInt(entry.dosTime())
+                    .putInt(entry.crc())
+                    .putInt((int)(bigcsize? U4_MAX: entry.compressedSize()))
+                    .putInt((int)(bigsize? U4_MAX: entry.size()))
+                    .putShort((short)entry.name().length)
+                    .putShort((short)(zip64? 4 + extralen: 0))
+                    .putShort((short)0)  // comment length
+                    .putShort((short)0)  // disk number
+                    .putShort((short)0)  // internal attributes
+                    .putInt(0)           // external attributes
+                    .putInt((int)(bigoffset? U4_MAX: entry.offset()))
+                    .put(entry.name());
+            if (zip64) {
+                buffer.putShort((short)ZIP64_EXTRA_ID).putShort((short)extralen);
+                if (bigsize) {
+                    buffer.putLong(entry.size());
+                }
+                if (bigcsize) {
+                    buffer.putLong(entry.compressedSize());
+                }
+                if (bigoffset) {
+                    buffer.putLong(entry.offset());
+                }
+            }
+        }
+        long end = position + buffer.position();
+        long cdsize = end - start;
+        long count = central.size();
+        boolean zip64 = count >= U2_MAX || cdsize >= U4_MAX || start >= U4_MAX;
+        ensure(56 + 20 + 22);
+        if (zip64) {
+            buffer.putInt(ZIP64_END_SIG)
+                    .putLong(44)
+                    .putShort((short)ZIP64_VERSION)
+                    .putShort((short)ZIP64_VERSION)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(count)
+                    .putLong(count)
+                    .putLong(cdsize)
+                    .putLong(start);
+            buffer.putInt(ZIP64_LOCATOR_SIG)
+                    .putInt(0)
+                    .putLong(end)
+                    .putInt(1);
+        }
+        buffer.putInt(END_SIG)
+                .putShort((short)0)
+                .putShort((short)0)
+                .putShort((short)Math.min(count, U2_MAX))
+                .putShort((short)Math.min(count, U2_MAX))
+                .putInt((int)Math.min(cdsize, U4_MAX))
+                .putInt((int)Math.min(start, U4_MAX))
+                .putShort((short)0);
+        flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (channel) {
+            writeCentralDirectory();
+        }
+    }
+
+}
@@ -0,0 +1,284 @@
+package com.github.david32768.jynxtransform;
+
+import java.io.IOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// java.lang.instrument agent that applies JynxStackChecker to classes as they are loaded
+//     agent options are comma separated
+//         packages=p1:p2   only classes whose internal names start with one of the prefixes e.g. com/example/
+//         cache=dir        results are also kept in dir, one file per class, for later runs
+//         memory=n         at most n results are kept in memory (least recently used are evicted); 0 for none
+//         quiet            statistics are not reported at exit
+//     results are kept in a bounded LRU map keyed by a digest of the class bytes and the checker version
+//         (they only help if the same class bytes are loaded again e.g. by another class loader)
+//     classes of the bootstrap loader and of this agent are not transformed
+//     a class that fails the check is loaded unchanged and the failure reported on System.err
+//     the time spent in the agent (i.e. added to class loading) is reported on System.err at exit
+public class JynxAgent implements ClassFileTransformer {
+
+    private static final String DIGEST = "SHA-256";
+    private static final String SUFFIX = ".class";
+    private static final String OWN_PACKAGE = JynxAgent.class.getPackageName().replace('.', '/') + '/';
+    private static final byte[] UNCHANGED = new byte[0];
+    private static final int DEFAULT_MEMORY_ENTRIES = 1024;
+
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(DIGEST);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    private record Key(long high, long low) {
+
+        private String fileName() {
+            return HexFormat.of().toHexDigits(high) + HexFormat.of().toHexDigits(low) + SUFFIX;
+        }
+    }
+
+    private final List<String> packages;
+    private final Path cacheDir;
+    private final int maxEntries;
+    private final Map<Key, byte[]> results;
+    private final ThreadLocal<JynxStackChecker> checkers;
+    private final ThreadLocal<Boolean> active;
+
+    private final LongAdder classes;
+    private final LongAdder changed;
+    private final LongAdder memoryHits;
+    private final LongAdder diskHits;
+    private final LongAdder failures;
+    private final LongAdder nanos;
+
+    // packages empty for all classes; cacheDir null for memory only
+    public JynxAgent(List<String> packages, Path cacheDir) {
+        this(packages, cacheDir, DEFAULT_MEMORY_ENTRIES);
+    }
+
+    public JynxAgent(List<String> packages, Path cacheDir, int maxEntries) {
+        if (maxEntries < 0) {
+            String msg = String.format("max entries must not be negative but is %d", maxEntries);
+            throw new IllegalArgumentException(msg);
+        }
+        this.packages = List.copyOf(packages);
+        this.cacheDir = cacheDir;
+        this.maxEntries = maxEntries;
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+                return size() > JynxAgent.this.maxEntries;
+            }
+        };
+        this.checkers = ThreadLocal.withInitial(JynxStackChecker::new);
+        this.active = ThreadLocal.withInitial(() -> false);
+        this.classes = new LongAdder();
+        this.changed = new LongAdder();
+        this.memoryHits = new LongAdder();
+        this.diskHits = new LongAdder();
+        this.failures = new LongAdder();
+        this.nanos = new LongAdder();
+    }
+
+    public static void premain(String agentArgs, Instrumentation inst) throws IOException {
+        install(agentArgs, inst);
+    }
+
+    public static void agentmain(String agentArgs, Instrumentation inst) throws IOException {
+        install(agentArgs, inst);
+    }
+
+    private static void install(String agentArgs, Instrumentation inst) throws IOException {
+        List<String> packages = new ArrayList<>();
+        Path cacheDir = null;
+        int maxEntries = DEFAULT_MEMORY_ENTRIES;
+        boolean quiet = false;
+        String options = agentArgs == null? "": agentArgs;
+        for (String option : options.split(",")) {
+            if (option.isEmpty()) {
+                continue;
+            }
+            int eq = option.indexOf('=');
+            String name = eq < 0? option: option.substring(0, eq);
+            String value = eq < 0? null: option.substring(eq + 1);
+            if (value == null && !name.equals("quiet")) {
+                String msg = String.format("agent option %s requires a value", name);
+                throw new IllegalArgumentException(msg);
+            }
+            switch (name) {
+                case "packages" -> {
+                    for (String pkg : value.split(":")) {
+                        packages.add(pkg.replace('.', '/'));
+                    }
+                }
+                case "cache" -> cacheDir = Path.of(value);
+                case "memory" -> maxEntries = Integer.parseInt(value);
+                case "quiet" -> quiet = true;
+                default -> {
+                    String msg = String.format("unknown agent option %s", option);
+                    throw new IllegalArgumentException(msg);
+                }
+            }
+        }
+        if (cacheDir != null) {
+            Files.createDirectories(cacheDir);
+        }
+        var agent = new JynxAgent(packages, cacheDir, maxEntries);
+        inst.addTransformer(agent);
+        if (!quiet) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.println(agent)));
+        }
+    }
+
+    public long classes() {
+        return classes.sum();
+    }
+
+    public long changed() {
+        return changed.sum();
+    }
+
+    public long cacheHits() {
+        return memoryHits.sum() + diskHits.sum();
+    }
+
+    public long failures() {
+        return failures.sum();
+    }
+
+    public long nanos() {
+        return nanos.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("JynxAgent: %d classes checked (%d changed, %d failed),"
+                + " cache hits memory %d disk %d, %.1f ms added to class loading",
+                classes(), changed(), failures(), memoryHits.sum(), diskHits.sum(), nanos() / 1_000_000.0);
+    }
+
+    private boolean selected(ClassLoader loader, String className) {
+        if (loader == null || className == null || className.startsWith(OWN_PACKAGE)) {
+            return false;
+        }
+        if (packages.isEmpty()) {
+            return true;
+        }
+        for (String pkg : packages) {
+            if (className.startsWith(pkg)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // classes loaded while a class is being transformed are not themselves transformed
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if (!selected(loader, className) || active.get()) {
+            return null;
+        }
+        active.set(true);
+        long start = System.nanoTime();
+        try {
+            byte[] result = result(className, classfileBuffer);
+            return result == UNCHANGED? null: result;
+        } finally {
+            nanos.add(System.nanoTime() - start);
+            active.set(false);
+        }
+    }
+
+    private byte[] result(String className, byte[] bytes) {
+        classes.increment();
+        var key = key(bytes);
+        byte[] result = get(key);
+        if (result != null) {
+            memoryHits.increment();
+            return result;
+        }
+        result = readCached(key);
+        if (result != null) {
+            diskHits.increment();
+        } else {
+            try {
+                result = JynxTransformDriver.transformIfDropped(checkers.get(), bytes);
+            } catch (IllegalArgumentException | IllegalStateException ex) {
+                failures.increment();
+                System.err.format("JynxAgent: %s not transformed: %s%n", className, ex.getMessage());
+                return UNCHANGED;
+            }
+            if (result == null) {
+                result = UNCHANGED;
+            }
+            writeCached(key, result);
+        }
+        if (result != UNCHANGED) {
+            changed.increment();
+        }
+        put(key, result);
+        return result;
+    }
+
+    private synchronized byte[] get(Key key) {
+        return results.get(key);
+    }
+
+    private synchronized void put(Key key, byte[] result) {
+        if (maxEntries != 0) {
+            results.put(key, result);
+        }
+    }
+
+    private static Key key(byte[] bytes) {
+        var md = DIGESTS.get();
+        md.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, JynxStackChecker.VERSION));
+        md.update(bytes);
+        var digest = ByteBuffer.wrap(md.digest());
+        return new Key(digest.getLong(), digest.getLong());
+    }
+
+    // an empty file records an unchanged class
+    private byte[] readCached(Key key) {
+        if (cacheDir == null) {
+            return null;
+        }
+        var path = cacheDir.resolve(key.fileName());
+        try {
+            byte[] bytes = Files.readAllBytes(path);
+            return bytes.length == 0? UNCHANGED: bytes;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private void writeCached(Key key, byte[] result) {
+        if (cacheDir == null) {
+            return;
+        }
+        var path = cacheDir.resolve(key.fileName());
+        try {
+            var tmp = Files.createTempFile(cacheDir, null, null);
+            Files.write(tmp, result);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            System.err.format("JynxAgent: unable to cache %s: %s%n", path, ex.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,261 @@
+package com.github.david32768.jynxtransform;
+
+import static java.lang.classfile.Opcode.*;
+import java.lang.classfile.instruction.*;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.CodeTransform;
+import java.lang.classfile.Instruction;
+import java.lang.classfile.Label;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.TypeKind;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Checks stack depth (in slots) only, for code that is known to be type correct
+//     label and unreachable code rules are those of JynxStackChecker
+//         and the same unreachable xCONST_0 are dropped
+//     but only stack depths at labels are compared
+public class JynxDepthChecker implements CodeTransform {
+
+    private static final int EXCEPTION_DEPTH = 1;
+
+    private final Map<Label, Integer> labelDepths;
+    private final List<Label> afterGotoLables;
+
+    private int depth;
+    private int maxDepth;
+    private boolean lastGoto;
+
+    public JynxDepthChecker() {
+        this.labelDepths = new HashMap<>();
+        this.afterGotoLables = new ArrayList<>();
+        this.depth = 0;
+        this.maxDepth = 0;
+        this.lastGoto = false;
+    }
+
+    // maximum stack depth in slots of the last method transformed
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    private void pop(int slots) {
+        if (slots > depth) {
+            String msg = String.format("stack underflow: require %d slots but stack depth is %d",
+                    slots, depth);
+            throw new IllegalArgumentException(msg);
+        }
+        depth -= slots;
+    }
+
+    private void push(int slots) {
+        depth += slots;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    private void branch(Label label) {
+        Integer old = labelDepths.putIfAbsent(label, depth);
+        if (old != null && old != depth) {
+            String msg = String.format("mismatch stack depth for label, old = %d current = %d",
+                    old, depth);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    private void setAfter() {
+        lastGoto = false;
+        for (var label: afterGotoLables) {
+            branch(label);
+        }
+        afterGotoLables.clear();
+    }
+
+    @Override
+    public void atStart(CodeBuilder builder) {
+        labelDepths.clear();
+        afterGotoLables.clear();
+        depth = 0;
+        maxDepth = 0;
+        lastGoto = false;
+    }
+
+    @Override
+    public void accept(CodeBuilder builder, CodeElement element) {
+        switch (element) {
+            case Instruction inst -> {
+                if (!processInstruction(inst)) {
+                    return;
+                }
+            }
+            case ExceptionCatch i -> {
+                labelDepths.putIfAbsent(i.handler(), EXCEPTION_DEPTH);
+            }
+            case LabelTarget i -> {
+                processLabel(i.label());
+            }
+            default -> {}
+        }
+        builder.with(element);
+    }
+
+    private void processLabel(Label label) {
+        if (lastGoto && depth == 0) {
+            Integer labelDepth = labelDepths.get(label);
+            if (labelDepth == null) {
+                afterGotoLables.add(label);
+            } else {
+                push(labelDepth);
+                setAfter();
+            }
+        } else {
+            lastGoto = false;
+            branch(label);
+        }
+    }
+
+    // returns false if instruction is to be dropped
+    private boolean processInstruction(Instruction inst) {
+        var op = inst.opcode();
+        if (lastGoto) {
+            if (afterGotoLables.isEmpty()) {
+                switch(op) {
+                    case ICONST_0, FCONST_0, LCONST_0, DCONST_0, ACONST_NULL -> {
+                        push(op.primaryTypeKind().slotSize());
+                        return false;
+                    }
+                    default -> {
+                        String msg = String.format("instruction %s is unreachable", inst);
+                        throw new IllegalStateException(msg);
+                    }
+                }
+            }
+            setAfter();
+        }
+        adjustDepth(inst);
+        if (op.isUnconditionalBranch()) {
+            lastGoto = true;
+            depth = 0;
+        }
+        return true;
+    }
+
+    private static final String MISSING = "missing case for op - ";
+
+    private static int slotsOf(ClassDesc desc) {
+        return TypeKind.from(desc).slotSize();
+    }
+
+    private static int parameterSlots(MethodTypeDesc type) {
+        int slots = 0;
+        for (int i = 0; i < type.parameterCount(); ++i) {
+            slots += slotsOf(type.parameterType(i));
+        }
+        return slots;
+    }
+
+    private void adjustDepth(Instruction inst) {
+        var op = inst.opcode();
+        var effect = StackEffect.of(op);
+        if (effect != null) {
+            pop(effect.popSlots);
+            push(effect.popSlots + effect.slotDelta);
+        }
+        switch (op.kind()) {
+            case BRANCH -> {
+                branch(((BranchInstruction)inst).target());
+            }
+            case CONSTANT -> {
+                if (effect == null) { // LDC, LDC_W, LDC2_W
+                    push(((ConstantInstruction)inst).typeKind().slotSize());
+                }
+            }
+            case DISCONTINUED_JSR -> {
+                push(1);
+                branch(((DiscontinuedInstruction.JsrInstruction)inst).target());
+                pop(1);
+            }
+            case FIELD_ACCESS -> {
+                int slots = slotsOf(((FieldInstruction)inst).typeSymbol());
+                switch(op) {
+                    case GETFIELD -> {
+                        pop(1);
+                        push(slots);
+                    }
+                    case GETSTATIC -> push(slots);
+                    case PUTFIELD -> pop(slots + 1);
+                    case PUTSTATIC -> pop(slots);
+                    default -> {
+                        assert false:MISSING + op;
+                    }
+                }
+            }
+            case INVOKE_DYNAMIC -> {
+                var type = ((InvokeDynamicInstruction)inst).typeSymbol();
+                pop(parameterSlots(type));
+                push(slotsOf(type.returnType()));
+            }
+            case INVOKE -> {
+                var type = ((InvokeInstruction)inst).typeSymbol();
+                pop(parameterSlots(type) + (op == INVOKESTATIC? 0: 1));
+                push(slotsOf(type.returnType()));
+            }
+            case LOOKUP_SWITCH -> {
+                var i = (LookupSwitchInstruction)inst;
+                branch(i.defaultTarget());
+                for (SwitchCase switchCase : i.cases()) {
+                    branch(switchCase.target());
+                }
+            }
+            case NEW_MULTI_ARRAY -> {
+                pop(((NewMultiArrayInstruction)inst).dimensions());
+                push(1);
+            }
+            case STACK -> {
+                adjustStack(op);
+            }
+            case TABLE_SWITCH -> {
+                var i = (TableSwitchInstruction)inst;
+                branch(i.defaultTarget());
+                for (SwitchCase switchCase : i.cases()) {
+                    branch(switchCase.target());
+                }
+            }
+            default -> {
+                assert effect != null:MISSING + op;
+            }
+        }
+    }
+
+    // slot counts only; the category of the entries is not checked
+    private void adjustStack(Opcode op) {
+        switch(op) {
+            case POP -> pop(1);
+            case POP2 -> pop(2);
+            case DUP -> dup(1, 0);
+            case DUP_X1 -> dup(1, 1);
+            case DUP_X2 -> dup(1, 2);
+            case DUP2 -> dup(2, 0);
+            case DUP2_X1 -> dup(2, 1);
+            case DUP2_X2 -> dup(2, 2);
+            case SWAP -> {
+                pop(2);
+                push(2);
+            }
+            default -> {
+                assert false:MISSING + op;
+            }
+        }
+    }
+
+    private void dup(int slots, int under) {
+        pop(slots + under);
+        push(slots + under + slots);
+    }
+
+}
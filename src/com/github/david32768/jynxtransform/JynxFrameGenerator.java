@@ -0,0 +1,902 @@
+package com.github.david32768.jynxtransform;
+
+import static java.lang.classfile.Opcode.*;
+import java.lang.classfile.instruction.*;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassTransform;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.CodeModel;
+import java.lang.classfile.CodeTransform;
+import java.lang.classfile.Instruction;
+import java.lang.classfile.Label;
+import java.lang.classfile.MethodModel;
+import java.lang.classfile.MethodTransform;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.TypeKind;
+import java.lang.classfile.attribute.StackMapFrameInfo;
+import java.lang.classfile.attribute.StackMapFrameInfo.VerificationTypeInfo;
+import java.lang.classfile.attribute.StackMapTableAttribute;
+import java.lang.classfile.constantpool.ClassEntry;
+import java.lang.classfile.constantpool.ConstantDynamicEntry;
+import java.lang.classfile.constantpool.MethodHandleEntry;
+import java.lang.classfile.constantpool.MethodTypeEntry;
+import java.lang.classfile.constantpool.StringEntry;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.reflect.AccessFlag;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+// Generates the StackMapTable of a method from an abstract interpretation of its stack and locals
+//     uses the unreachable code rules of JynxStackChecker (and drops the same xCONST_0 padding)
+//         locals at a label after an unconditional branch are those at the branch
+//             and its stack is empty, or the caught type if it is a handler not yet reached from its range
+//     the method is analysed (in atStart) until frames at backward branch targets are stable
+//         then the elements are passed through and the table is added in atEnd
+//     must be applied to the unchanged elements of the method's CodeModel
+//         with ClassFile.StackMapsOption.DROP_STACK_MAPS (the original table is dropped)
+//     reference types are merged using a ClassHierarchy; jsr and ret are not supported
+//     if precise the reference types of operands are also checked against those the instruction requires
+//         (a type is only rejected if the hierarchy shows it is not assignable)
+public class JynxFrameGenerator implements CodeTransform {
+
+    private static final int MAX_PASSES = 64;
+
+    private record Handler(Label handler, VType[] stack) {}
+
+    private static final class Frame {
+
+        private VType[] locals;
+        private VType[] stack;
+
+        private Frame(VType[] locals, VType[] stack) {
+            this.locals = locals;
+            this.stack = stack;
+        }
+    }
+
+    private final ClassDesc thisClass;
+    private final String methodName;
+    private final MethodTypeDesc methodType;
+    private final boolean isStatic;
+    private final CodeModel code;
+    private final ReferenceTypes types;
+    private final boolean precise;
+    private final boolean addFrames;
+
+    private final Map<Label, Frame> incoming;
+    private final Map<Label, Frame> bound;
+    private final Map<Label, Integer> positions;
+    private final Map<Label, Frame> seeds;
+    private final Set<Label> framed;
+    private final List<Label> afterGotoLabels;
+    private final Map<Label, List<Handler>> handlerStarts;
+    private final Map<Label, List<Handler>> handlerEnds;
+    private final Map<Label, VType[]> handlerStacks;
+    private final List<Handler> activeHandlers;
+    private final List<Integer> dropped;
+
+    private VType[] locals;
+    private VType[] stack;
+    private int top;
+    private boolean lastGoto;
+    private boolean widened;
+    private int position;
+    private int elementIndex;
+
+    private final List<Label> frameLabels;
+    private final List<Frame> frames;
+    private final Map<Integer, Label> newLabels;
+    private int[] droppedElements;
+    private int nextDropped;
+    private int[] newIndices;
+    private int nextNew;
+
+    public JynxFrameGenerator(MethodModel method, ClassHierarchy hierarchy) {
+        this(method, hierarchy, false);
+    }
+
+    // frames are only added for classes with version 50 or above
+    public JynxFrameGenerator(MethodModel method, ClassHierarchy hierarchy, boolean precise) {
+        var classModel = method.parent().orElseThrow();
+        this.thisClass = classModel.thisClass().asSymbol();
+        this.methodName = method.methodName().stringValue();
+        this.methodType = method.methodTypeSymbol();
+        this.isStatic = method.flags().has(AccessFlag.STATIC);
+        this.code = method.code().orElseThrow(() -> {
+            String msg = String.format("method %s%s has no code", methodName, methodType.descriptorString());
+            return new IllegalArgumentException(msg);
+        });
+        this.types = new ReferenceTypes(hierarchy);
+        this.precise = precise;
+        this.addFrames = classModel.majorVersion() >= ClassFile.JAVA_6_VERSION;
+        this.incoming = new HashMap<>();
+        this.bound = new LinkedHashMap<>();
+        this.positions = new HashMap<>();
+        this.seeds = new HashMap<>();
+        this.framed = new HashSet<>();
+        this.afterGotoLabels = new ArrayList<>();
+        this.handlerStarts = new HashMap<>();
+        this.handlerEnds = new HashMap<>();
+        this.handlerStacks = new HashMap<>();
+        this.activeHandlers = new ArrayList<>();
+        this.dropped = new ArrayList<>();
+        this.locals = new VType[0];
+        this.stack = new VType[16];
+        this.frameLabels = new ArrayList<>();
+        this.frames = new ArrayList<>();
+        this.newLabels = new HashMap<>();
+    }
+
+    // generates frames for the methods of classes with version 50 or above
+    //     the ClassFile must have StackMapsOption.DROP_STACK_MAPS
+    public static ClassTransform classTransform(ClassHierarchy hierarchy) {
+        return (clb, cle) -> {
+            if (cle instanceof MethodModel mm && mm.code().isPresent()
+                    && mm.parent().orElseThrow().majorVersion() >= ClassFile.JAVA_6_VERSION) {
+                clb.transformMethod(mm, MethodTransform.transformingCode(new JynxFrameGenerator(mm, hierarchy)));
+            } else {
+                clb.with(cle);
+            }
+        };
+    }
+
+    // checks reference types of all versions in precise mode and generates frames for version 50 or above
+    //     the ClassFile must have StackMapsOption.DROP_STACK_MAPS
+    public static ClassTransform preciseTransform(ClassHierarchy hierarchy) {
+        return (clb, cle) -> {
+            if (cle instanceof MethodModel mm && mm.code().isPresent()) {
+                clb.transformMethod(mm, MethodTransform.transformingCode(new JynxFrameGenerator(mm, hierarchy, true)));
+            } else {
+                clb.with(cle);
+            }
+        };
+    }
+
+    private VType local(int slot) {
+        return slot < locals.length? locals[slot]: VType.Simple.TOP;
+    }
+
+    private void setLocal(int slot, VType type) {
+        if (slot + 2 > locals.length) {
+            int length = locals.length;
+            locals = Arrays.copyOf(locals, Math.max(slot + 2, 2 * length));
+            Arrays.fill(locals, length, locals.length, VType.Simple.TOP);
+        }
+        if (slot > 0 && locals[slot - 1].isCategory2()) {
+            locals[slot - 1] = VType.Simple.TOP;
+        }
+        locals[slot] = type;
+        if (type.isCategory2()) {
+            locals[slot + 1] = VType.Simple.TOP;
+        }
+    }
+
+    private VType load(int slot, TypeKind kind) {
+        var type = local(slot);
+        if (type.kind() != kind.asLoadable()) {
+            String msg = String.format("local %d is %s but expected %s", slot, type, kind.asLoadable());
+            throw new IllegalArgumentException(msg);
+        }
+        return type;
+    }
+
+    private void push(VType type) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, 2 * top);
+        }
+        stack[top++] = type;
+    }
+
+    private void pushResult(ClassDesc desc) {
+        if (TypeKind.from(desc) != TypeKind.VoidType) {
+            push(VType.of(desc));
+        }
+    }
+
+    private VType pop() {
+        checkDepth(1);
+        return stack[--top];
+    }
+
+    private VType pop(TypeKind kind) {
+        var type = pop();
+        if (type.kind() != kind.asLoadable()) {
+            String msg = String.format("top of stack is %s but expected %s", type, kind.asLoadable());
+            throw new IllegalArgumentException(msg);
+        }
+        return type;
+    }
+
+    // the reference type is only checked if precise
+    private VType pop(ClassDesc desc) {
+        var type = pop(TypeKind.from(desc));
+        if (precise && !desc.isPrimitive()) {
+            var expected = new VType.Reference(desc);
+            if (!types.mayBeAssignable(expected, type)) {
+                String msg = String.format("top of stack is %s but expected %s", type, expected);
+                throw new IllegalArgumentException(msg);
+            }
+        }
+        return type;
+    }
+
+    private void checkDepth(int entries) {
+        if (entries > top) {
+            String msg = String.format("stack underflow: require %d entries but stack is %s",
+                    entries, toString(stack, top));
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    // checks entry at depth is a single slot; returns number of entries (1)
+    private int single(int depth) {
+        checkDepth(depth + 1);
+        var type = stack[top - 1 - depth];
+        if (type.isCategory2()) {
+            String msg = String.format("attempting to remove single slot from stack but top of stack is %s",
+                    type);
+            throw new IllegalArgumentException(msg);
+        }
+        return 1;
+    }
+
+    // returns number of entries (1 or 2) that make up two slots starting at depth
+    private int pair(int depth) {
+        checkDepth(depth + 1);
+        if (stack[top - 1 - depth].isCategory2()) {
+            return 1;
+        }
+        return 1 + single(depth + 1);
+    }
+
+    // inserts a copy of the top 'count' entries below the following 'under' entries
+    private void dup(int count, int under) {
+        checkDepth(count + under);
+        VType[] copy = Arrays.copyOfRange(stack, top - count, top);
+        if (top + count > stack.length) {
+            stack = Arrays.copyOf(stack, 2 * (top + count));
+        }
+        int base = top - count - under;
+        System.arraycopy(stack, base, stack, base + count, under + count);
+        System.arraycopy(copy, 0, stack, base, count);
+        top += count;
+    }
+
+    private static VType[] trimmed(VType[] types) {
+        int length = types.length;
+        while (length > 0 && types[length - 1] == VType.Simple.TOP) {
+            --length;
+        }
+        return Arrays.copyOf(types, length);
+    }
+
+    private Frame current() {
+        return new Frame(trimmed(locals), Arrays.copyOf(stack, top));
+    }
+
+    private void restore(Frame frame) {
+        locals = frame.locals.clone();
+        top = 0;
+        for (var type : frame.stack) {
+            push(type);
+        }
+    }
+
+    private VType[] mergeLocals(VType[] first, VType[] second) {
+        VType[] result = new VType[Math.max(first.length, second.length)];
+        for (int i = 0; i < result.length; ++i) {
+            var type1 = i < first.length? first[i]: VType.Simple.TOP;
+            var type2 = i < second.length? second[i]: VType.Simple.TOP;
+            result[i] = types.merge(type1, type2);
+        }
+        return trimmed(result);
+    }
+
+    private VType[] mergeStacks(Label label, VType[] first, VType[] second, int length) {
+        if (first.length != length) {
+            String msg = String.format("mismatch stack for label %s, old = %s current = %s",
+                    label, toString(first, first.length), toString(second, length));
+            throw new IllegalArgumentException(msg);
+        }
+        VType[] result = new VType[length];
+        for (int i = 0; i < length; ++i) {
+            result[i] = types.merge(first[i], second[i]);
+            if (result[i] == VType.Simple.TOP) {
+                String msg = String.format("mismatch stack for label %s, old = %s current = %s",
+                        label, toString(first, first.length), toString(second, length));
+                throw new IllegalArgumentException(msg);
+            }
+        }
+        return result;
+    }
+
+    // merges frame into current state
+    private void mergeCurrent(Label label, Frame frame) {
+        if (frame != null) {
+            var merged = new Frame(mergeLocals(locals, frame.locals), mergeStacks(label, frame.stack, stack, top));
+            restore(merged);
+        }
+    }
+
+    private boolean isAssignable(Frame frame, VType[] edgeStack, int edgeTop) {
+        if (frame.stack.length != edgeTop) {
+            return false;
+        }
+        for (int i = 0; i < edgeTop; ++i) {
+            if (!types.isAssignable(frame.stack[i], edgeStack[i])) {
+                return false;
+            }
+        }
+        for (int i = 0; i < frame.locals.length; ++i) {
+            if (!types.isAssignable(frame.locals[i], local(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void edge(Label target, VType[] edgeStack, int edgeTop) {
+        framed.add(target);
+        var frame = bound.get(target);
+        if (frame == null) {
+            frame = incoming.get(target);
+            if (frame == null) {
+                incoming.put(target, new Frame(trimmed(locals), Arrays.copyOf(edgeStack, edgeTop)));
+            } else {
+                frame.locals = mergeLocals(frame.locals, locals);
+                frame.stack = mergeStacks(target, frame.stack, edgeStack, edgeTop);
+            }
+        } else if (!isAssignable(frame, edgeStack, edgeTop)) {
+            // backward branch; widen frame for next pass
+            var seed = seeds.getOrDefault(target, frame);
+            seeds.put(target, new Frame(mergeLocals(seed.locals, locals),
+                    mergeStacks(target, seed.stack, edgeStack, edgeTop)));
+            widened = true;
+        }
+    }
+
+    private void jump(Label target) {
+        edge(target, stack, top);
+    }
+
+    private void handlerEdges() {
+        for (var handler : activeHandlers) {
+            edge(handler.handler(), handler.stack(), 1);
+        }
+    }
+
+    private void freeze(Label label) {
+        bound.put(label, current());
+        positions.put(label, position);
+    }
+
+    private void setAfter() {
+        lastGoto = false;
+        for (var label : afterGotoLabels) {
+            mergeCurrent(label, seeds.get(label));
+        }
+        for (var label : afterGotoLabels) {
+            freeze(label);
+        }
+        afterGotoLabels.clear();
+    }
+
+    private void start() {
+        incoming.clear();
+        bound.clear();
+        positions.clear();
+        framed.clear();
+        afterGotoLabels.clear();
+        handlerStarts.clear();
+        handlerEnds.clear();
+        handlerStacks.clear();
+        activeHandlers.clear();
+        dropped.clear();
+        locals = new VType[0];
+        top = 0;
+        lastGoto = false;
+        widened = false;
+        position = 0;
+        elementIndex = 0;
+        int slot = 0;
+        if (!isStatic) {
+            boolean uninitialized = methodName.equals(ConstantDescs.INIT_NAME)
+                    && !thisClass.equals(ConstantDescs.CD_Object);
+            setLocal(slot++, uninitialized? VType.Simple.UNINITIALIZED_THIS: new VType.Reference(thisClass));
+        }
+        for (var desc : methodType.parameterList()) {
+            var type = VType.of(desc);
+            setLocal(slot, type);
+            slot += type.isCategory2()? 2: 1;
+        }
+    }
+
+    private void analyze() {
+        seeds.clear();
+        int passes = 0;
+        do {
+            if (++passes > MAX_PASSES) {
+                String msg = String.format("frames for %s%s not stable after %d passes",
+                        methodName, methodType.descriptorString(), MAX_PASSES);
+                throw new IllegalStateException(msg);
+            }
+            start();
+            for (var element : code) {
+                process(element);
+                ++elementIndex;
+            }
+        } while (widened);
+    }
+
+    @Override
+    public void atStart(CodeBuilder builder) {
+        analyze();
+        collectFrames();
+        droppedElements = dropped.stream()
+                .mapToInt(Integer::intValue)
+                .toArray();
+        nextDropped = 0;
+        newIndices = newLabels.keySet().stream()
+                .mapToInt(Integer::intValue)
+                .sorted()
+                .toArray();
+        nextNew = 0;
+        elementIndex = 0;
+    }
+
+    // one frame for each bytecode position that is a branch or handler target or follows an unconditional branch
+    //     the last label bound at a position has the widest frame
+    private void collectFrames() {
+        frameLabels.clear();
+        frames.clear();
+        newLabels.clear();
+        int lastPosition = -1;
+        boolean lastFramed = false;
+        for (var entry : bound.entrySet()) {
+            var label = entry.getKey();
+            int labelPosition = positions.get(label);
+            if (labelPosition == lastPosition) {
+                frameLabels.set(frameLabels.size() - 1, label);
+                frames.set(frames.size() - 1, entry.getValue());
+                lastFramed |= framed.contains(label);
+            } else {
+                if (!lastFramed && !frames.isEmpty()) {
+                    frameLabels.removeLast();
+                    frames.removeLast();
+                }
+                frameLabels.add(label);
+                frames.add(entry.getValue());
+                lastPosition = labelPosition;
+                lastFramed = framed.contains(label);
+            }
+        }
+        if (!lastFramed && !frames.isEmpty()) {
+            frameLabels.removeLast();
+            frames.removeLast();
+        }
+        for (var frame : frames) {
+            for (var type : frame.locals) {
+                if (type instanceof VType.Uninitialized uninit) {
+                    newLabels.put(uninit.newIndex(), null);
+                }
+            }
+            for (var type : frame.stack) {
+                if (type instanceof VType.Uninitialized uninit) {
+                    newLabels.put(uninit.newIndex(), null);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void accept(CodeBuilder builder, CodeElement element) {
+        int index = elementIndex++;
+        if (nextDropped < droppedElements.length && droppedElements[nextDropped] == index) {
+            ++nextDropped;
+            return;
+        }
+        if (element instanceof StackMapTableAttribute) {
+            return;
+        }
+        if (nextNew < newIndices.length && newIndices[nextNew] == index) {
+            ++nextNew;
+            newLabels.put(index, builder.newBoundLabel());
+        }
+        builder.with(element);
+    }
+
+    @Override
+    public void atEnd(CodeBuilder builder) {
+        if (frames.isEmpty() || !addFrames) {
+            return;
+        }
+        List<StackMapFrameInfo> infos = new ArrayList<>(frames.size());
+        for (int i = 0; i < frames.size(); ++i) {
+            var frame = frames.get(i);
+            infos.add(StackMapFrameInfo.of(frameLabels.get(i), localsInfo(frame.locals), stackInfo(frame.stack)));
+        }
+        builder.with(StackMapTableAttribute.of(infos));
+    }
+
+    // second slot of long and double is implicit
+    private List<VerificationTypeInfo> localsInfo(VType[] frameLocals) {
+        List<VerificationTypeInfo> result = new ArrayList<>(frameLocals.length);
+        for (int i = 0; i < frameLocals.length; ++i) {
+            var type = frameLocals[i];
+            result.add(type.toInfo(newLabels::get));
+            if (type.isCategory2()) {
+                ++i;
+            }
+        }
+        return result;
+    }
+
+    private List<VerificationTypeInfo> stackInfo(VType[] frameStack) {
+        List<VerificationTypeInfo> result = new ArrayList<>(frameStack.length);
+        for (var type : frameStack) {
+            result.add(type.toInfo(newLabels::get));
+        }
+        return result;
+    }
+
+    private void process(CodeElement element) {
+        if (element instanceof Instruction inst) {
+            processInstruction(inst);
+            return;
+        }
+        switch (element) {
+            case ExceptionCatch i -> {
+                var catchType = i.catchType()
+                        .map(ClassEntry::asSymbol)
+                        .orElse(ConstantDescs.CD_Throwable);
+                var handler = new Handler(i.handler(), new VType[]{new VType.Reference(catchType)});
+                handlerStarts.computeIfAbsent(i.tryStart(), _ -> new ArrayList<>()).add(handler);
+                handlerEnds.computeIfAbsent(i.tryEnd(), _ -> new ArrayList<>()).add(handler);
+                handlerStacks.putIfAbsent(i.handler(), handler.stack());
+            }
+            case LabelTarget i -> bind(i.label());
+            default -> {}
+        }
+    }
+
+    private void bind(Label label) {
+        var ends = handlerEnds.get(label);
+        if (ends != null) {
+            activeHandlers.removeAll(ends);
+        }
+        var starts = handlerStarts.get(label);
+        if (starts != null) {
+            activeHandlers.addAll(starts);
+        }
+        var in = incoming.remove(label);
+        var seed = seeds.get(label);
+        if (lastGoto && top == 0) {
+            framed.add(label);
+            if (in == null && seed == null) {
+                var handlerStack = handlerStacks.get(label);
+                if (handlerStack == null) {
+                    afterGotoLabels.add(label);
+                    return;
+                }
+                // handler before its range; its edges widen the locals for the next pass if necessary
+                push(handlerStack[0]);
+            } else if (in != null) {
+                restore(in);
+                mergeCurrent(label, seed);
+            } else {
+                restore(seed);
+            }
+            setAfter();
+        } else {
+            if (lastGoto) {
+                framed.add(label);
+                lastGoto = false;
+            }
+            mergeCurrent(label, in);
+            mergeCurrent(label, seed);
+        }
+        freeze(label);
+    }
+
+    private void processInstruction(Instruction inst) {
+        var op = inst.opcode();
+        if (lastGoto) {
+            if (afterGotoLabels.isEmpty()) {
+                switch(op) {
+                    case ICONST_0, FCONST_0, LCONST_0, DCONST_0, ACONST_NULL -> {
+                        push(op == ACONST_NULL? VType.Simple.NULL: VType.of(op.primaryTypeKind()));
+                        dropped.add(elementIndex);
+                        return;
+                    }
+                    default -> {
+                        String msg = String.format("instruction %s is unreachable", inst);
+                        throw new IllegalStateException(msg);
+                    }
+                }
+            }
+            setAfter();
+        }
+        handlerEdges();
+        execute(inst);
+        ++position;
+        if (op.isUnconditionalBranch()) {
+            lastGoto = true;
+            top = 0;
+        }
+    }
+
+    private static final String MISSING = "missing case for op - ";
+
+    // switches on Opcode.Kind rather than the instruction type as this is called for every instruction
+    private void execute(Instruction inst) {
+        var op = inst.opcode();
+        switch (op.kind()) {
+            case LOAD -> {
+                var i = (LoadInstruction)inst;
+                push(load(i.slot(), i.typeKind()));
+            }
+            case STORE -> {
+                var i = (StoreInstruction)inst;
+                setLocal(i.slot(), pop(i.typeKind()));
+                handlerEdges();
+            }
+            case INCREMENT -> {
+                load(((IncrementInstruction)inst).slot(), TypeKind.IntType);
+            }
+            case ARRAY_LOAD -> {
+                if (op == AALOAD) {
+                    pop(TypeKind.IntType);
+                    push(componentOf(pop(TypeKind.ReferenceType)));
+                } else {
+                    applyEffect(op);
+                }
+            }
+            case CONSTANT -> {
+                push(constantType((ConstantInstruction)inst));
+            }
+            case NEW_OBJECT -> {
+                var i = (NewObjectInstruction)inst;
+                push(new VType.Uninitialized(elementIndex, i.className().asSymbol()));
+            }
+            case NEW_PRIMITIVE_ARRAY -> {
+                var i = (NewPrimitiveArrayInstruction)inst;
+                pop(TypeKind.IntType);
+                push(new VType.Reference(ClassDesc.ofDescriptor(i.typeKind().descriptor()).arrayType()));
+            }
+            case NEW_REF_ARRAY -> {
+                var i = (NewReferenceArrayInstruction)inst;
+                pop(TypeKind.IntType);
+                push(new VType.Reference(i.componentType().asSymbol().arrayType()));
+            }
+            case NEW_MULTI_ARRAY -> {
+                var i = (NewMultiArrayInstruction)inst;
+                for (int j = 0; j < i.dimensions(); ++j) {
+                    pop(TypeKind.IntType);
+                }
+                push(new VType.Reference(i.arrayType().asSymbol()));
+            }
+            case TYPE_CHECK -> {
+                if (op == CHECKCAST) {
+                    pop(TypeKind.ReferenceType);
+                    push(new VType.Reference(((TypeCheckInstruction)inst).type().asSymbol()));
+                } else {
+                    applyEffect(op);
+                }
+            }
+            case FIELD_ACCESS -> {
+                var i = (FieldInstruction)inst;
+                var desc = i.typeSymbol();
+                switch(op) {
+                    case GETFIELD -> {
+                        pop(i.owner().asSymbol());
+                        push(VType.of(desc));
+                    }
+                    case GETSTATIC -> {
+                        push(VType.of(desc));
+                    }
+                    case PUTFIELD -> {
+                        pop(desc);
+                        checkDepth(1);
+                        // a field of this may be set before the super constructor is called
+                        if (stack[top - 1] == VType.Simple.UNINITIALIZED_THIS) {
+                            pop(TypeKind.ReferenceType);
+                        } else {
+                            pop(i.owner().asSymbol());
+                        }
+                    }
+                    case PUTSTATIC -> {
+                        pop(desc);
+                    }
+                    default -> {
+                        assert false:MISSING + op;
+                    }
+                }
+            }
+            case INVOKE_DYNAMIC -> {
+                var type = ((InvokeDynamicInstruction)inst).typeSymbol();
+                for (var desc : type.parameterList().reversed()) {
+                    pop(desc);
+                }
+                pushResult(type.returnType());
+            }
+            case INVOKE -> {
+                var i = (InvokeInstruction)inst;
+                var type = i.typeSymbol();
+                for (var desc : type.parameterList().reversed()) {
+                    pop(desc);
+                }
+                if (op == INVOKESPECIAL && i.name().equalsString(ConstantDescs.INIT_NAME)) {
+                    initialize(pop(TypeKind.ReferenceType));
+                } else if (op != INVOKESTATIC) {
+                    pop(i.owner().asSymbol());
+                }
+                pushResult(type.returnType());
+            }
+            case STACK -> {
+                adjustStack(op);
+            }
+            case BRANCH -> {
+                applyEffect(op);
+                jump(((BranchInstruction)inst).target());
+            }
+            case LOOKUP_SWITCH -> {
+                applyEffect(op);
+                var i = (LookupSwitchInstruction)inst;
+                jump(i.defaultTarget());
+                for (SwitchCase switchCase : i.cases()) {
+                    jump(switchCase.target());
+                }
+            }
+            case TABLE_SWITCH -> {
+                applyEffect(op);
+                var i = (TableSwitchInstruction)inst;
+                jump(i.defaultTarget());
+                for (SwitchCase switchCase : i.cases()) {
+                    jump(switchCase.target());
+                }
+            }
+            case RETURN -> {
+                if (op == ARETURN) {
+                    pop(methodType.returnType());
+                } else {
+                    applyEffect(op);
+                }
+            }
+            case THROW_EXCEPTION -> {
+                pop(ConstantDescs.CD_Throwable);
+            }
+            case DISCONTINUED_JSR, DISCONTINUED_RET -> {
+                String msg = String.format("instruction %s is not supported", inst);
+                throw new IllegalArgumentException(msg);
+            }
+            default -> {
+                applyEffect(op);
+            }
+        }
+    }
+
+    private void applyEffect(Opcode op) {
+        var effect = StackEffect.of(op);
+        assert effect != null:MISSING + op;
+        for (var kind : effect.pops) {
+            pop(kind);
+        }
+        for (var kind : effect.pushes) {
+            push(VType.of(kind));
+        }
+    }
+
+    // the component of UNKNOWN_REFERENCE (which may be an array) is also unknown
+    private static VType componentOf(VType array) {
+        if (array == VType.Simple.NULL || array == VType.Simple.UNKNOWN_REFERENCE) {
+            return array;
+        }
+        if (array instanceof VType.Reference(ClassDesc desc) && desc.isArray()
+                && !desc.componentType().isPrimitive()) {
+            return new VType.Reference(desc.componentType());
+        }
+        String msg = String.format("%s is not an array of references", array);
+        throw new IllegalArgumentException(msg);
+    }
+
+    private static VType constantType(ConstantInstruction inst) {
+        if (inst instanceof ConstantInstruction.LoadConstantInstruction ldc) {
+            return switch (ldc.constantEntry()) {
+                case StringEntry _ -> new VType.Reference(ConstantDescs.CD_String);
+                case ClassEntry _ -> new VType.Reference(ConstantDescs.CD_Class);
+                case MethodTypeEntry _ -> new VType.Reference(ConstantDescs.CD_MethodType);
+                case MethodHandleEntry _ -> new VType.Reference(ConstantDescs.CD_MethodHandle);
+                case ConstantDynamicEntry entry -> VType.of(ClassDesc.ofDescriptor(entry.type().stringValue()));
+                default -> VType.of(ldc.typeKind());
+            };
+        }
+        if (inst.opcode() == ACONST_NULL) {
+            return VType.Simple.NULL;
+        }
+        return VType.of(inst.typeKind());
+    }
+
+    // replaces all occurrences of the uninitialized receiver of <init>
+    private void initialize(VType receiver) {
+        VType initialized = switch (receiver) {
+            case VType.Simple.UNINITIALIZED_THIS -> new VType.Reference(thisClass);
+            case VType.Uninitialized uninit -> new VType.Reference(uninit.desc());
+            default -> {
+                String msg = String.format("<init> called on initialized %s", receiver);
+                throw new IllegalArgumentException(msg);
+            }
+        };
+        for (int i = 0; i < top; ++i) {
+            if (stack[i].equals(receiver)) {
+                stack[i] = initialized;
+            }
+        }
+        for (int i = 0; i < locals.length; ++i) {
+            if (locals[i].equals(receiver)) {
+                locals[i] = initialized;
+            }
+        }
+    }
+
+    private void adjustStack(Opcode op) {
+        switch(op) {
+            case POP -> {
+                single(0);
+                --top;
+            }
+            case POP2 -> {
+                top -= pair(0);
+            }
+            case DUP -> {
+                dup(single(0), 0);
+            }
+            case DUP_X1 -> {
+                dup(single(0), single(1));
+            }
+            case DUP_X2 -> {
+                dup(single(0), pair(1));
+            }
+            case DUP2 -> {
+                dup(pair(0), 0);
+            }
+            case DUP2_X1 -> {
+                int count = pair(0);
+                dup(count, single(count));
+            }
+            case DUP2_X2 -> {
+                int count = pair(0);
+                dup(count, pair(count));
+            }
+            case SWAP -> {
+                single(0);
+                single(1);
+                var tos = stack[top - 1];
+                stack[top - 1] = stack[top - 2];
+                stack[top - 2] = tos;
+            }
+            default -> {
+                assert false:MISSING + op;
+            }
+        }
+    }
+
+    private static String toString(VType[] types, int length) {
+        StringJoiner sj = new StringJoiner(", ", "[", "]");
+        for (int i = 0; i < length; ++i) {
+            sj.add(types[i].toString());
+        }
+        return sj.toString();
+    }
+
+}
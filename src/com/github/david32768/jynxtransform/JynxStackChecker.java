@@ -5,6 +5,7 @@ import java.lang.classfile.instruction.*;
 
 import java.lang.classfile.CodeBuilder;
 import java.lang.classfile.CodeElement;
+import java.lang.classfile.CodeModel;
 import java.lang.classfile.CodeTransform;
 import java.lang.classfile.CustomAttribute;
 import java.lang.classfile.Instruction;
@@ -15,14 +16,12 @@ import java.lang.classfile.TypeKind;
 import java.lang.classfile.attribute.RuntimeInvisibleTypeAnnotationsAttribute;
 import java.lang.classfile.attribute.RuntimeVisibleTypeAnnotationsAttribute;
 import java.lang.classfile.attribute.StackMapTableAttribute;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Deque;
-import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 // Checks stack using TypeKind.Reference instead of actual Object
 //     assumes the stack is empty for label (if not previously used) after unconditional branch
@@ -30,64 +29,95 @@ import java.util.Map;
 //     these unreachable instructions will be dropped.
 public class JynxStackChecker implements CodeTransform {
 
-    private final Deque<TypeKind> stack;
-    private final Map<Label, Deque<TypeKind>> labelMap;
+    // change if checking or dropping behaviour changes (invalidates CheckerCache entries)
+    static final int VERSION = 1;
+
+    private static final byte[] EXCEPTION_STACK = KindStack.snapshotOf(TypeKind.ReferenceType);
+    private static final int TRACE_RECORDS = 64;
+
+    private final KindStack stack;
+    private final Map<Label, byte[]> labelMap;
     private final List<Label> afterGotoLables;
+    private final List<Integer> droppedElements;
 
     private final boolean trace;
+    private final TraceRing traceRing;
+    private final Consumer<StackAnalysis> listener;
+    private Map<Instruction, byte[]> instructionStacks; // null if not recorded
+    private final CheckerMetrics metrics;
     private boolean lastGoto;
+    private boolean branched;
+    private boolean handlers;
+    private boolean afterPadding;
     private boolean drop; 
+    private int elementIndex;
+    private int bci;
+    private int instructionCount;
+    private int afterGotoCount;
+    private int conditionalBranches;
+    private long startNanos;
+    private CodeModel code;
+    private CheckerMethodEvent event;
     
     public JynxStackChecker() {
         this(false);
     }
     
     public JynxStackChecker(boolean trace) {
-        this.stack = new ArrayDeque<>();
+        this(trace, null);
+    }
+
+    // counts and times of all methods checked are added to CheckerMetrics.global()
+    // trace records the last elements of a method checked; they are written to System.err if it fails
+    // listener (if not null) is called at the end of each method transformed
+    public JynxStackChecker(boolean trace, Consumer<StackAnalysis> listener) {
+        this.stack = new KindStack();
         this.labelMap = new HashMap<>();
         this.afterGotoLables = new ArrayList<>();
+        this.droppedElements = new ArrayList<>();
         this.lastGoto = false;
+        this.branched = false;
+        this.handlers = false;
+        this.afterPadding = false;
         this.trace = trace;
+        this.traceRing = trace? new TraceRing(TRACE_RECORDS): null;
+        this.listener = listener;
+        this.metrics = CheckerMetrics.global();
         this.drop = false;
+        this.elementIndex = 0;
+        this.bci = 0;
+        this.instructionCount = 0;
+        this.afterGotoCount = 0;
+        this.conditionalBranches = 0;
+        this.startNanos = 0;
+        this.code = null;
+        this.event = null;
+        this.instructionStacks = null;
     }
 
     private void pushKind(TypeKind typeKind) {
         if (typeKind == TypeKind.VoidType) {
             return;
         }
-        stack.addLast(typeKind.asLoadable());
-    }
-    
-    private void pushInt() {
-        pushKind(TypeKind.IntType);
+        stack.push(typeKind.asLoadable());
     }
     
     private void pushReference() {
         pushKind(TypeKind.ReferenceType);
     }
 
-    private void pushList(List<TypeKind> list) {
-        for (var tos : list) {
-            pushKind(tos);
-        }
-    }
-    
     private void popKind(TypeKind typeKind) {
         if (typeKind == TypeKind.VoidType) {
             return;
         }
-        TypeKind onStack = stack.removeLast();
+        TypeKind onStack = stack.pop();
         if (onStack != typeKind.asLoadable()) {
             String msg = String.format("top of stack is %s but expected %s",
                     onStack, typeKind.asLoadable());
-            throw new IllegalArgumentException(msg);
+            throw new StackMismatchException(msg, typeKind.asLoadable().toString(), onStack.toString());
         }
     }
     
-    private void popInt() {
-        popKind(TypeKind.IntType);
-    }
-    
     private void popReference() {
         popKind(TypeKind.ReferenceType);
     }
@@ -98,40 +128,39 @@ public class JynxStackChecker implements CodeTransform {
         }
     }
 
-    private TypeKind pop() {
-        var tos = stack.removeLast();
-        if (tos.slotSize() != 1) {
+    // checks entry at depth is a single slot; returns number of entries (1)
+    private int single(int depth) {
+        var kind = stack.peek(depth);
+        if (kind.slotSize() != 1) {
             String msg = String.format("attempting to remove single slot from stack but top of stack is %s",
-                    tos);
+                    kind);
             throw new IllegalArgumentException(msg);
         }
-        return tos;
+        return 1;
     }
     
-    private List<TypeKind> pop2() {
-        var tos = stack.removeLast();
-        if (tos.slotSize() == 2) {
-            return List.of(tos);
+    // returns number of entries (1 or 2) that make up two slots starting at depth
+    private int pair(int depth) {
+        if (stack.peek(depth).slotSize() == 2) {
+            return 1;
         }
-        var nos = pop();
-        return List.of(nos, tos);
+        return 1 + single(depth + 1);
     }
     
     private void branch(Label label) {
-        branch(label, new ArrayDeque<>(stack));
-    }
-    
-    private void branch(Label label, Deque<TypeKind> dq) {
-        var old = labelMap.putIfAbsent(label, dq);
-        if (old != null && !compare(old, stack) ) {
+        var old = labelMap.get(label);
+        if (old == null) {
+            labelMap.put(label, stack.snapshot());
+        } else if (!stack.matches(old)) {
             String msg = String.format("mismatch stack for label, old = %s current = %s",
-                    old, stack);
-            throw new IllegalArgumentException(msg);
+                    KindStack.toString(old), stack);
+            throw new StackMismatchException(msg, KindStack.toString(old), stack.toString());
         }
     }
-    
-    private boolean compare(Deque<TypeKind> dq1, Deque<TypeKind> dq2) {
-        return Arrays.equals(dq1.toArray(), dq2.toArray());
+
+    private void jump(Label label) {
+        branched = true;
+        branch(label);
     }
 
     private void setAfter() {
@@ -139,67 +168,191 @@ public class JynxStackChecker implements CodeTransform {
         for (var label: afterGotoLables) {
             branch(label);
         }
+        afterGotoCount += afterGotoLables.size();
         afterGotoLables.clear();
     }
     
     @Override
     public void atStart(CodeBuilder builder) {
+        start(builder.original().orElse(null));
+    }
+
+    // code (if not null) is used to name the method in CheckerMethodEvent
+    private void start(CodeModel code) {
+        this.code = code;
+        event = new CheckerMethodEvent();
+        event.begin();
+        startNanos = System.nanoTime();
         if (trace) {
-            System.err.println("****** start called");
+            traceRing.clear();
         }
-        stack.clear();
+        stack.reset();
         labelMap.clear();
         afterGotoLables.clear();
         lastGoto = false;
+        branched = false;
+        handlers = false;
+        afterPadding = false;
         drop = false;
+        droppedElements.clear();
+        elementIndex = 0;
+        bci = 0;
+        instructionCount = 0;
+        afterGotoCount = 0;
+        conditionalBranches = 0;
+    }
+
+    private void finish() {
+        long elapsed = System.nanoTime() - startNanos;
+        metrics.recordMethod(elapsed, instructionCount, droppedElements.size(), afterGotoCount,
+                labelMap.size(), stack.maxSlots());
+        event.end();
+        if (event.shouldCommit()) {
+            event.method = methodName();
+            event.instructions = instructionCount;
+            event.droppedConstants = droppedElements.size();
+            event.afterGotoLabels = afterGotoCount;
+            event.labels = labelMap.size();
+            event.maxStackSlots = stack.maxSlots();
+            event.commit();
+        }
+        event = null;
+        code = null;
+    }
+
+    private String methodName() {
+        if (code == null) {
+            return "";
+        }
+        return code.parent()
+                .map(mm -> mm.parent().map(cm -> cm.thisClass().asInternalName() + '.').orElse("")
+                        + mm.methodName().stringValue() + mm.methodType().stringValue())
+                .orElse("");
+    }
+
+    // bci (in the original code) of the element being checked i.e. of the failing element after an exception
+    int bci() {
+        return bci;
+    }
+
+    String currentStack() {
+        return stack.toString();
+    }
+
+    // indices (in order received by accept) of elements dropped from the last method transformed
+    int[] droppedElements() {
+        return droppedElements.stream()
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    // result for the last method transformed or analysed
+    public StackAnalysis analysis() {
+        Map<Instruction, byte[]> stacks = instructionStacks == null? Map.of(): instructionStacks;
+        // a label after an unconditional branch is assumed reachable unless it has the stack of an earlier branch
+        boolean allReachable = afterGotoCount == 0 && !afterPadding && !handlers;
+        return new StackAnalysis(stack.maxSlots(), Map.copyOf(labelMap), stacks, droppedElements(), branched,
+                allReachable, conditionalBranches);
+    }
+
+    // checks code without building it
+    public StackAnalysis analyze(CodeModel code) {
+        return analyze(code, code, false);
+    }
+
+    // elements are those of code (in order) but may be different objects
+    // if instructionStacks the stack before each instruction object is also recorded in the analysis
+    StackAnalysis analyze(CodeModel code, Iterable<? extends CodeElement> elements, boolean instructionStacks) {
+        this.instructionStacks = instructionStacks? new IdentityHashMap<>(): null;
+        try {
+            start(code);
+            for (var element : elements) {
+                check(element);
+            }
+            finish();
+            return analysis();
+        } finally {
+            this.instructionStacks = null;
+        }
     }
 
     @Override
     public void atEnd(CodeBuilder builder) {
+        finish();
+        if (listener != null) {
+            listener.accept(analysis());
+        }
     }
     
     @Override
     public void accept(CodeBuilder builder, CodeElement element) {
+        if (check(element)) {
+            builder.with(element);
+        }
+    }
+
+    // returns false if element is to be dropped
+    private boolean check(CodeElement element) {
         drop = false;
+        try {
+            switch (element) {
+                case Instruction inst -> {
+                    if (instructionStacks != null) {
+                        instructionStacks.put(inst, stack.snapshot());
+                    }
+                    processInstruction(inst);
+                }
+                case PseudoInstruction pseudo -> {
+                    processPseudo(pseudo);
+                }
+                case StackMapTableAttribute _ -> {}
+                case RuntimeVisibleTypeAnnotationsAttribute _ -> {}
+                case RuntimeInvisibleTypeAnnotationsAttribute _ -> {}
+                case CustomAttribute _ -> {}
+            }
+        } catch (RuntimeException ex) {
+            metrics.recordFailure();
+            if (trace) {
+                traceElement(element);
+                System.err.format("%s at bci %d%n%s", ex.getMessage(), bci, traceRing.dump());
+            }
+            throw ex;
+        }
         if (trace) {
-            System.err.format("stack: %s%n", stack);
-            System.err.format("element: %s%n",element);
+            traceElement(element);
         }
+        if (element instanceof Instruction inst) {
+            bci += inst.sizeInBytes();
+        }
+        if (drop) {
+            droppedElements.add(elementIndex);
+        }
+        ++elementIndex;
+        return !drop;
+    }
+
+    // bci is of the element in the original code (i.e. including dropped instructions)
+    private void traceElement(CodeElement element) {
         switch (element) {
             case Instruction inst -> {
-                processInstruction(inst);
+                traceRing.record(bci, inst.opcode().ordinal(), stack.slots(), stack.hash());
             }
-            case PseudoInstruction pseudo -> {
-                processPseudo(pseudo);
+            case LabelTarget _ -> {
+                traceRing.record(bci, TraceRing.LABEL, stack.slots(), stack.hash());
             }
-            case StackMapTableAttribute _ -> {}
-            case RuntimeVisibleTypeAnnotationsAttribute _ -> {}
-            case RuntimeInvisibleTypeAnnotationsAttribute _ -> {}
-            case CustomAttribute _ -> {}
-        }
-        if (drop) {
-            if (trace) {
-                System.err.format("drop: %s%n", element);
+            case ExceptionCatch _ -> {
+                traceRing.record(bci, TraceRing.HANDLER, stack.slots(), stack.hash());
             }
-        } else {
-            builder.with(element);
+            default -> {}
         }
     }
 
     private void processPseudo(PseudoInstruction pseudo) {
         switch (pseudo) {
             case ExceptionCatch i -> {
-                if (trace) {
-                    System.err.format("catch handler %s%n", i.handler());
-                }
-                Deque<TypeKind> exdq = new ArrayDeque<>();
-                exdq.add(TypeKind.ReferenceType);
-                var old = labelMap.get(i.handler());
-                if (old == null) {
-                    branch(i.handler(), exdq);
-                } else {
-                    compare(old, exdq);
-                }
+                branched = true;
+                handlers = true;
+                labelMap.putIfAbsent(i.handler(), EXCEPTION_STACK);
             }
             case LabelTarget i -> {
                 if (lastGoto && stack.isEmpty()) {
@@ -207,12 +360,13 @@ public class JynxStackChecker implements CodeTransform {
                     if (labelStack == null) {
                         afterGotoLables.add(i.label());
                     } else {
-                        stack.addAll(labelStack);
+                        stack.load(labelStack);
                         setAfter();
                     }
                 } else {
                     if (lastGoto) {
                         lastGoto = false;
+                        afterPadding = true;
                     }
                     branch(i.label());
                 }
@@ -225,6 +379,7 @@ public class JynxStackChecker implements CodeTransform {
     }
     
     private void processInstruction(Instruction inst) {
+        ++instructionCount;
         if (lastGoto) {
             if (afterGotoLables.isEmpty()) {
                 switch(inst.opcode()) {
@@ -242,77 +397,45 @@ public class JynxStackChecker implements CodeTransform {
             setAfter();
         }
         adjustStackForInstruction(inst);
+        if (StackAnalysis.isConditionalBranch(inst.opcode())) {
+            ++conditionalBranches;
+        }
         if (inst.opcode().isUnconditionalBranch()) {
             lastGoto = true;
             stack.clear();
         }
     }
     
-    private static final String BAD_OP = "misclassified or unknown op - ";
     private static final String MISSING = "missing case for op - ";
-    
+
+    private void applyEffect(StackEffect effect) {
+        for (var kind : effect.pops) {
+            popKind(kind);
+        }
+        for (var kind : effect.pushes) {
+            pushKind(kind);
+        }
+    }
+
     private void adjustStackForInstruction(Instruction inst) {
         var op = inst.opcode();
+        var effect = StackEffect.of(op);
+        if (effect != null) {
+            applyEffect(effect);
+        }
         switch (inst) {
-            case ArrayLoadInstruction i -> {
-                assert EnumSet.of(IALOAD, LALOAD, FALOAD, DALOAD, AALOAD, BALOAD, CALOAD, SALOAD)
-                    .contains(op):BAD_OP + op;
-                popInt();
-                popReference();
-                pushKind(i.typeKind());
-            }
-            case ArrayStoreInstruction i -> {
-                assert EnumSet.of(IASTORE, LASTORE, FASTORE, DASTORE, AASTORE, BASTORE, CASTORE, SASTORE)
-                    .contains(op):BAD_OP + op;
-                popKind(i.typeKind());
-                popInt();
-                popReference();
-            }
             case BranchInstruction i -> {
-                assert EnumSet.of(IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE, IFNULL, IFNONNULL,
-                        IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE, IF_ACMPEQ, IF_ACMPNE,
-                        GOTO, GOTO_W)
-                    .contains(op):BAD_OP + op;
-                var kind = op.primaryTypeKind();
-                switch(op) {
-                    case IFNONNULL -> { // BUG in java.lang.classfile.Opcode
-                        kind = TypeKind.ReferenceType;
-                    }
-                    case IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGT, IF_ICMPGE, IF_ICMPLE, IF_ACMPEQ, IF_ACMPNE -> {
-                        popKind(kind);
-                    }
-                    default -> {
-                        assert EnumSet.of(IFEQ, IFNE, IFLT, IFGT, IFLE, IFGE, IFNULL, GOTO, GOTO_W)
-                                .contains(op):MISSING + op;
-                    }
-                }
-                popKind(kind);
-                branch(i.target());
+                jump(i.target());
             }
-            case ConstantInstruction i -> {
-                assert EnumSet.of(ACONST_NULL, BIPUSH, SIPUSH, LDC, LDC_W, LDC2_W,
-                        ICONST_M1, ICONST_0, ICONST_1, ICONST_2, ICONST_3, ICONST_4, ICONST_5,
-                        LCONST_0, LCONST_1, FCONST_0, FCONST_1, FCONST_2, DCONST_0, DCONST_1)
-                    .contains(op):BAD_OP + op;
+            case ConstantInstruction i when effect == null -> { // LDC, LDC_W, LDC2_W
                 pushKind(i.typeKind());
             }
-            case ConvertInstruction i -> {
-                assert EnumSet.of(I2L, I2F, I2D, L2I, L2F, L2D, F2I, F2L, F2D, D2I, D2L, D2F, I2B, I2C, I2S)
-                        .contains(op):BAD_OP + op;
-                popKind(i.fromType());
-                pushKind(i.toType());
-            }
             case DiscontinuedInstruction.JsrInstruction i -> {
-                assert EnumSet.of(JSR, JSR_W).contains(op):BAD_OP + op;
                 pushReference();
-                branch(i.target());
+                jump(i.target());
                 popReference();
             }
-            case DiscontinuedInstruction.RetInstruction _ -> {
-                assert EnumSet.of(RET, RET_W).contains(op):BAD_OP + op;
-            }
             case FieldInstruction i -> {
-                assert EnumSet.of(GETSTATIC, PUTSTATIC, GETFIELD, PUTFIELD).contains(op):BAD_OP + op;
                 var kind = TypeKind.from(i.typeSymbol());
                 switch(op) {
                     case GETFIELD -> {
@@ -335,7 +458,6 @@ public class JynxStackChecker implements CodeTransform {
                 }
             }
             case InvokeDynamicInstruction i -> {
-                assert op == Opcode.INVOKEDYNAMIC:BAD_OP + op;
                 var type = i.typeSymbol();
                 for (var desc : type.parameterList().reversed()) {
                     var kind = TypeKind.from(desc);
@@ -344,218 +466,76 @@ public class JynxStackChecker implements CodeTransform {
                 pushKind(TypeKind.from(type.returnType()));
             }
             case InvokeInstruction i -> {
-                assert EnumSet.of(INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, INVOKEINTERFACE)
-                    .contains(op):BAD_OP + op;
                 var type = i.typeSymbol();
                 for (var desc : type.parameterList().reversed()) {
                     var kind = TypeKind.from(desc);
                     popKind(kind);
                 }
-                switch (op) {
-                    case INVOKEINTERFACE, INVOKESPECIAL, INVOKEVIRTUAL -> {
-                        popReference();
-                    }
-                    default -> {
-                        assert op == Opcode.INVOKESTATIC:MISSING + op;
-                    }
+                if (op != Opcode.INVOKESTATIC) {
+                    popReference();
                 }
                 pushKind(TypeKind.from(type.returnType()));
             }
-            case LoadInstruction i -> {
-                assert EnumSet.of(ILOAD, LLOAD, FLOAD, DLOAD, ALOAD,
-                        ILOAD_0, ILOAD_1, ILOAD_2, ILOAD_3,
-                        LLOAD_0, LLOAD_1, LLOAD_2, LLOAD_3,
-                        FLOAD_0, FLOAD_1, FLOAD_2, FLOAD_3,
-                        DLOAD_0, DLOAD_1, DLOAD_2, DLOAD_3,
-                        ALOAD_0, ALOAD_1, ALOAD_2, ALOAD_3,
-                        ILOAD_W, LLOAD_W, FLOAD_W, DLOAD_W, ALOAD_W)
-                    .contains(op):BAD_OP + op;
-                pushKind(i.typeKind());
-            }
-            case StoreInstruction i -> {
-                assert EnumSet.of(ISTORE, LSTORE, FSTORE, DSTORE, ASTORE,
-                        ISTORE_0, ISTORE_1, ISTORE_2, ISTORE_3,
-                        LSTORE_0, LSTORE_1, LSTORE_2, LSTORE_3,
-                        FSTORE_0, FSTORE_1, FSTORE_2, FSTORE_3,
-                        DSTORE_0, DSTORE_1, DSTORE_2, DSTORE_3,
-                        ASTORE_0, ASTORE_1, ASTORE_2, ASTORE_3,
-                        ISTORE_W, LSTORE_W, FSTORE_W, DSTORE_W, ASTORE_W)
-                    .contains(op):BAD_OP + op;
-                popKind(i.typeKind());
-            }
-            case IncrementInstruction _ -> {
-                assert EnumSet.of(IINC, IINC_W).contains(op):BAD_OP + op;
-            }
             case LookupSwitchInstruction i -> {
-                assert op == Opcode.LOOKUPSWITCH:BAD_OP + op;
-                popInt();
-                branch(i.defaultTarget());
+                jump(i.defaultTarget());
                 for (SwitchCase switchCase : i.cases()) {
-                    branch(switchCase.target());
+                    jump(switchCase.target());
                 }
             }
-            case MonitorInstruction _ -> {
-                assert EnumSet.of(MONITORENTER, MONITOREXIT).contains(op):BAD_OP + op;
-                popReference();
-            }
             case NewMultiArrayInstruction i -> {
-                assert op == Opcode.MULTIANEWARRAY:BAD_OP + op;
                 popInt(i.dimensions());
                 pushReference();
             }
-            case NewObjectInstruction _ -> {
-                assert op == Opcode.NEW:BAD_OP + op;
-                pushReference();
+            case StackInstruction _ -> {
+                adjustStack(op);
             }
-            case NewPrimitiveArrayInstruction _ -> {
-                assert op == Opcode.NEWARRAY:BAD_OP + op;
-                popInt();
-                pushReference();
+            case TableSwitchInstruction i -> {
+                jump(i.defaultTarget());
+                for (SwitchCase switchCase : i.cases()) {
+                    jump(switchCase.target());
+                }
             }
-            case NewReferenceArrayInstruction _ -> {
-                assert op == Opcode.ANEWARRAY:BAD_OP + op;
-                popInt();
-                pushReference();
+            default -> {
+                assert effect != null:MISSING + op;
             }
-            case NopInstruction _ -> {
-                assert op == Opcode.NOP:BAD_OP + op;
+        }
+    }
+
+    private void adjustStack(Opcode op) {
+        switch(op) {
+            case POP -> {
+                stack.drop(single(0));
+            }    
+            case POP2 -> {
+                stack.drop(pair(0));
             }
-            case OperatorInstruction i -> {
-                assert EnumSet.of(IADD, LADD, FADD, DADD,
-                        ISUB, LSUB, FSUB, DSUB,
-                        IMUL, LMUL, FMUL, DMUL,
-                        IDIV, LDIV, FDIV, DDIV,
-                        IREM, LREM, FREM, DREM,
-                        INEG, LNEG, FNEG, DNEG,
-                        ISHL, LSHL, ISHR, LSHR, IUSHR, LUSHR,
-                        IAND, LAND, IOR, LOR, IXOR, LXOR,
-                        LCMP, FCMPL, FCMPG, DCMPL, DCMPG,
-                        ARRAYLENGTH)
-                    .contains(op):BAD_OP + op;
-                var kind = i.typeKind();
-                var result = kind;
-                switch (op) {
-                    case ARRAYLENGTH -> {
-                        popReference();
-                    }
-                    case ISHL, ISHR, IUSHR, LSHL, LSHR, LUSHR -> {
-                        popInt();
-                        popKind(kind);
-                    }
-                    case INEG, LNEG, FNEG, DNEG -> {
-                        popKind(kind);
-                    }
-                    case LCMP, FCMPG, FCMPL, DCMPG, DCMPL -> {
-                        popKind(kind);
-                        popKind(kind);
-                        result = TypeKind.IntType;
-                    }
-                    case IADD, LADD, FADD, DADD,
-                            ISUB, LSUB, FSUB, DSUB,
-                            IMUL, LMUL, FMUL, DMUL,
-                            IDIV, LDIV, FDIV, DDIV,
-                            IREM, LREM, FREM, DREM,
-                            IAND, LAND, IOR, LOR, IXOR, LXOR
-                               -> {
-                        popKind(kind);
-                        popKind(kind);
-                    }
-                    default -> {
-                        assert false:MISSING + op;
-                    }
-                }
-                pushKind(result);
+            case DUP -> {
+                stack.dup(single(0), 0);
             }
-            case ReturnInstruction i -> {
-                assert EnumSet.of(IRETURN, LRETURN, FRETURN, DRETURN, ARETURN, RETURN)
-                    .contains(op):BAD_OP + op;
-                popKind(i.typeKind());
+            case DUP_X1 -> {
+                stack.dup(single(0), single(1));
             }
-            case StackInstruction _ -> {
-                assert EnumSet.of(POP, POP2, DUP, DUP_X1, DUP_X2, DUP2, DUP2_X1, DUP2_X2, SWAP)
-                    .contains(op):BAD_OP + op;
-                switch(op) {
-                    case POP -> {
-                        pop();
-                    }    
-                    case POP2 -> {
-                        pop2();
-                    }
-                    case DUP -> {
-                        var tos = pop();
-                        pushKind(tos);
-                        pushKind(tos);
-                    }
-                    case DUP_X1 -> {
-                        var tos = pop();
-                        var nos = pop();
-                        pushKind(tos);
-                        pushKind(nos);
-                        pushKind(tos);
-                    }
-                    case DUP_X2 -> {
-                        var tos = pop();
-                        var list = pop2();
-                        pushKind(tos);
-                        pushList(list);
-                        pushKind(tos);
-                    }
-                    case DUP2 -> {
-                        var list = pop2();
-                        pushList(list);
-                        pushList(list);
-                    }
-                    case DUP2_X1 -> {
-                        var toslist = pop2();
-                        var nos = pop();
-                        pushList(toslist);
-                        pushKind(nos);
-                        pushList(toslist);
-                    }
-                    case DUP2_X2 -> {
-                        var toslist = pop2();
-                        var noslist = pop2();
-                        pushList(toslist);
-                        pushList(noslist);
-                        pushList(toslist);
-                    }
-                    case SWAP -> {
-                        var tos = pop();
-                        var nos = pop();
-                        pushKind(tos);
-                        pushKind(nos);
-                    }
-                    default -> {
-                        assert false:MISSING + op;
-                    }
-                }
+            case DUP_X2 -> {
+                stack.dup(single(0), pair(1));
             }
-            case TableSwitchInstruction i -> {
-                assert op == Opcode.TABLESWITCH:BAD_OP + op;
-                popInt();
-                branch(i.defaultTarget());
-                for (SwitchCase switchCase : i.cases()) {
-                    branch(switchCase.target());
-                }
+            case DUP2 -> {
+                stack.dup(pair(0), 0);
             }
-            case ThrowInstruction _ -> {
-                assert op == Opcode.ATHROW:BAD_OP + op;
-                popReference();
+            case DUP2_X1 -> {
+                int count = pair(0);
+                stack.dup(count, single(count));
             }
-            case TypeCheckInstruction _ -> {
-                assert EnumSet.of(INSTANCEOF, CHECKCAST).contains(op):BAD_OP + op;
-                popReference();
-                switch(op) {
-                    case INSTANCEOF -> {
-                        pushInt();
-                    }
-                    case CHECKCAST -> {
-                        pushReference();
-                    }
-                    default -> {
-                        assert false:MISSING + op;
-                    }
-                }
+            case DUP2_X2 -> {
+                int count = pair(0);
+                stack.dup(count, pair(count));
+            }
+            case SWAP -> {
+                single(0);
+                single(1);
+                stack.swap();
+            }
+            default -> {
+                assert false:MISSING + op;
             }
         }
     }
@@ -0,0 +1,603 @@
+package com.github.david32768.jynxtransform;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassModel;
+import java.lang.classfile.ClassTransform;
+import java.lang.classfile.CodeTransform;
+import java.lang.classfile.MethodModel;
+import java.lang.classfile.MethodTransform;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Applies a CodeTransform (by default JynxStackChecker) to every class of a jar or class directory
+//     classes are transformed in parallel on a ForkJoinPool
+//     jars are memory mapped and written to a FileChannel; only a bounded window of classes is in flight
+//     non-class jar entries are copied without being decompressed
+//     each worker thread has its own transform which is reused for all the classes it processes
+//     output is written in input entry order
+public class JynxTransformDriver {
+
+    private static final String CLASS_SUFFIX = ".class";
+    private static final int TASKS_PER_THREAD = 16;
+    private static final int DEFAULT_CACHE_SIZE = 1 << 20;
+    private static final int DEFAULT_HIERARCHY_CACHE_SIZE = 1 << 14;
+    private static final int METHODS_PER_TASK = 64;
+
+    private static final ClassFile CLASS_FILE = ClassFile.of();
+    private static final ClassFile CLASS_FILE_NO_FRAMES = CLASS_FILE.withOptions(
+            ClassFile.DeadCodeOption.KEEP_DEAD_CODE, ClassFile.StackMapsOption.DROP_STACK_MAPS);
+
+    private final int parallelism;
+    private final Function<byte[], byte[]> transformer;
+
+    public JynxTransformDriver(int parallelism) {
+        this(parallelism, JynxStackChecker::new);
+    }
+
+    public JynxTransformDriver(int parallelism, Supplier<? extends CodeTransform> supplier) {
+        this(threadTransformer(supplier), parallelism);
+    }
+
+    // methods found in the cache are not rechecked
+    public JynxTransformDriver(int parallelism, boolean trace, CheckerCache cache) {
+        this(checkerTransformer(trace, (checker, bytes) ->
+                CLASS_FILE.transform(CLASS_FILE.parse(bytes), cache.transform(bytes, checker))), parallelism);
+    }
+
+    private JynxTransformDriver(Function<byte[], byte[]> transformer, int parallelism) {
+        if (parallelism <= 0) {
+            String msg = String.format("parallelism must be positive but is %d", parallelism);
+            throw new IllegalArgumentException(msg);
+        }
+        this.parallelism = parallelism;
+        this.transformer = transformer;
+    }
+
+    private static Function<byte[], byte[]> threadTransformer(Supplier<? extends CodeTransform> supplier) {
+        var transforms = ThreadLocal.withInitial(
+                () -> ClassTransform.transformingMethodBodies(supplier.get()));
+        return bytes -> CLASS_FILE.transform(CLASS_FILE.parse(bytes), transforms.get());
+    }
+
+    private static Function<byte[], byte[]> checkerTransformer(boolean trace,
+            BiFunction<JynxStackChecker, byte[], byte[]> transform) {
+        var checkers = ThreadLocal.withInitial(() -> new JynxStackChecker(trace));
+        return bytes -> transform.apply(checkers.get(), bytes);
+    }
+
+    // the checker analyses each class before it is rebuilt; the rebuild replays its results so that
+    //     stack maps are not generated (nor dead code patched) if no method needs frames
+    //         code after a GOTO at a label that is not a branch target is accepted by the checker,
+    //         so if frames are generated dead code is patched as by the default ClassFile
+    public static JynxTransformDriver ofSingleAnalysis(int parallelism, boolean trace) {
+        return new JynxTransformDriver(checkerTransformer(trace, JynxTransformDriver::transformAnalysed),
+                parallelism);
+    }
+
+    private static byte[] transformAnalysed(JynxStackChecker checker, byte[] bytes) {
+        var model = CLASS_FILE.parse(bytes);
+        return rebuild(model, analyze(checker, model));
+    }
+
+    // returns null if nothing is dropped from any method i.e. the class is unchanged
+    static byte[] transformIfDropped(JynxStackChecker checker, byte[] bytes) {
+        var model = CLASS_FILE.parse(bytes);
+        var analyses = analyze(checker, model);
+        for (var analysis : analyses) {
+            if (analysis.droppedCount() != 0) {
+                return rebuild(model, analyses);
+            }
+        }
+        return null;
+    }
+
+    private static List<StackAnalysis> analyze(JynxStackChecker checker, ClassModel model) {
+        List<StackAnalysis> analyses = new ArrayList<>();
+        for (var mm : model.methods()) {
+            var code = mm.code();
+            if (code.isPresent()) {
+                analyses.add(checker.analyze(code.get()));
+            }
+        }
+        return analyses;
+    }
+
+    private static byte[] rebuild(ClassModel model, List<StackAnalysis> analyses) {
+        boolean frames = false;
+        for (var analysis : analyses) {
+            frames |= analysis.needsFrames();
+        }
+        var classFile = frames? CLASS_FILE: CLASS_FILE_NO_FRAMES;
+        var iter = analyses.stream()
+                .map(StackAnalysis::droppedElements)
+                .iterator();
+        var transform = ClassTransform.transformingMethodBodies(
+                CodeTransform.ofStateful(() -> new DroppingTransform(iter.next())));
+        return classFile.transform(model, transform);
+    }
+
+    // the methods of a class are analysed in parallel in tasks of at least METHODS_PER_TASK methods
+    //     each task parses the class bytes itself so that no lazily built model state is shared
+    //     the class is rebuilt in method order; a method with nothing dropped is copied unchanged
+    //     and if no method has anything dropped the original bytes are returned
+    //     a class that fails reports the failure of its first failing method as a sequential check would
+    public static JynxTransformDriver ofParallelMethods(int parallelism, boolean trace) {
+        var checkers = ThreadLocal.withInitial(() -> new JynxStackChecker(trace));
+        return new JynxTransformDriver(bytes -> transformParallel(checkers, parallelism, bytes), parallelism);
+    }
+
+    private static byte[] transformParallel(ThreadLocal<JynxStackChecker> checkers, int parallelism,
+            byte[] bytes) {
+        var model = CLASS_FILE.parse(bytes);
+        int count = model.methods().size();
+        int[][] dropped = new int[count][];
+        boolean[] frames = new boolean[count];
+        int perTask = Math.max(METHODS_PER_TASK, (count + parallelism * TASKS_PER_THREAD - 1)
+                / (parallelism * TASKS_PER_THREAD));
+        if (count <= perTask) {
+            analyzeMethods(checkers.get(), model, 0, count, dropped, frames);
+        } else {
+            analyzeParallel(checkers, bytes, perTask, dropped, frames);
+        }
+        boolean changed = false;
+        boolean needsFrames = false;
+        for (int i = 0; i < count; ++i) {
+            if (dropped[i] != null && dropped[i].length != 0) {
+                changed = true;
+                needsFrames |= frames[i];
+            }
+        }
+        if (!changed) {
+            return bytes;
+        }
+        var classFile = needsFrames? CLASS_FILE: CLASS_FILE_NO_FRAMES;
+        var iter = Arrays.asList(dropped).iterator();
+        ClassTransform transform = (builder, element) -> {
+            if (element instanceof MethodModel mm) {
+                int[] methodDropped = iter.next();
+                if (methodDropped == null || methodDropped.length == 0) {
+                    builder.with(mm);
+                } else {
+                    builder.transformMethod(mm,
+                            MethodTransform.transformingCode(new DroppingTransform(methodDropped)));
+                }
+            } else {
+                builder.with(element);
+            }
+        };
+        return classFile.transform(model, transform);
+    }
+
+    private static void analyzeParallel(ThreadLocal<JynxStackChecker> checkers, byte[] bytes, int perTask,
+            int[][] dropped, boolean[] frames) {
+        int count = dropped.length;
+        int taskCount = (count + perTask - 1) / perTask;
+        RuntimeException[] failures = new RuntimeException[taskCount];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(taskCount);
+        for (int t = 0; t < taskCount; ++t) {
+            int task = t;
+            tasks.add(ForkJoinTask.adapt(() -> {
+                try {
+                    var model = CLASS_FILE.parse(bytes);
+                    int start = task * perTask;
+                    analyzeMethods(checkers.get(), model, start, Math.min(count, start + perTask),
+                            dropped, frames);
+                } catch (RuntimeException ex) {
+                    failures[task] = ex;
+                }
+            }));
+        }
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+        for (var failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    // methods without code are left null in dropped
+    private static void analyzeMethods(JynxStackChecker checker, ClassModel model, int start, int end,
+            int[][] dropped, boolean[] frames) {
+        var methods = model.methods();
+        for (int i = start; i < end; ++i) {
+            var code = methods.get(i).code();
+            if (code.isPresent()) {
+                var analysis = checker.analyze(code.get());
+                dropped[i] = analysis.droppedElements();
+                frames[i] = analysis.needsFrames();
+            }
+        }
+    }
+
+    // methods that fail are recorded in diagnostics and left unchanged
+    public static JynxTransformDriver ofDiagnostics(int parallelism, boolean trace, CheckerDiagnostics diagnostics) {
+        return new JynxTransformDriver(checkerTransformer(trace, (checker, bytes) ->
+                CLASS_FILE.transform(CLASS_FILE.parse(bytes), diagnostics.transform(checker))), parallelism);
+    }
+
+    // replaces stack maps with those generated by JynxFrameGenerator
+    public static JynxTransformDriver ofFrameGenerator(int parallelism, ClassHierarchy hierarchy) {
+        var transform = JynxFrameGenerator.classTransform(hierarchy);
+        return new JynxTransformDriver(bytes -> CLASS_FILE_NO_FRAMES.transform(CLASS_FILE_NO_FRAMES.parse(bytes),
+                transform), parallelism);
+    }
+
+    // the checker's analysis of each method is shared by the stages of the pipeline
+    public static JynxTransformDriver ofPipeline(int parallelism, TransformPipeline pipeline) {
+        return new JynxTransformDriver(pipeline::transform, parallelism);
+    }
+
+    // checks reference types and replaces stack maps using JynxFrameGenerator in precise mode
+    public static JynxTransformDriver ofPrecise(int parallelism, ClassHierarchy hierarchy) {
+        var transform = JynxFrameGenerator.preciseTransform(hierarchy);
+        return new JynxTransformDriver(bytes -> CLASS_FILE_NO_FRAMES.transform(CLASS_FILE_NO_FRAMES.parse(bytes),
+                transform), parallelism);
+    }
+
+    // classes are read from paths before being loaded by the system class loader
+    //     lookups are cached so that one hierarchy may be shared by all threads and runs
+    public static ClassHierarchyCache hierarchyOf(List<Path> paths, int maxEntries) throws IOException {
+        var loading = ClassHierarchy.ofClassLoading(ClassLoader.getSystemClassLoader());
+        var hierarchy = paths.isEmpty()? loading: ClassHierarchy.ofPaths(paths).orElse(loading);
+        return new ClassHierarchyCache(hierarchy, maxEntries);
+    }
+
+    public byte[] transformClass(byte[] bytes) {
+        return transformer.apply(bytes);
+    }
+
+    public void transform(Path input, Path output) throws IOException {
+        if (Files.isDirectory(input)) {
+            transformDirectory(input, output);
+        } else {
+            transformJar(input, output);
+        }
+    }
+
+    private byte[] transformEntry(String name, InputStream is) throws IOException {
+        byte[] bytes = is.readAllBytes();
+        if (name.endsWith(CLASS_SUFFIX)) {
+            return transformClass(bytes);
+        }
+        return bytes;
+    }
+
+    public void transformJar(Path input, Path output) throws IOException {
+        var jar = MappedJar.open(input);
+        try (var pool = new ForkJoinPool(parallelism);
+                var writer = JarChannelWriter.create(output)) {
+            var entries = jar.entries();
+            int window = parallelism * TASKS_PER_THREAD;
+            List<Future<JarChannelWriter.Deflated>> results = new ArrayList<>(entries.size());
+            int submitted = 0;
+            for (int i = 0; i < entries.size(); ++i) {
+                for (; submitted < entries.size() && submitted < i + window; ++submitted) {
+                    var entry = entries.get(submitted);
+                    if (isClass(entry)) {
+                        results.add(pool.submit(() -> {
+                            byte[] bytes = transformClass(jar.read(entry));
+                            return JarChannelWriter.deflate(bytes);
+                        }));
+                    } else {
+                        results.add(null);
+                    }
+                }
+                var entry = entries.get(i);
+                var result = results.set(i, null);
+                if (result == null) {
+                    writer.copy(entry, jar.raw(entry));
+                } else {
+                    writer.write(entry.name(), entry.dosTime(), resultOf(entry.name(), result));
+                }
+            }
+        }
+    }
+
+    private static boolean isClass(MappedJar.Entry entry) {
+        return !entry.isDirectory() && entry.name().endsWith(CLASS_SUFFIX);
+    }
+
+    public void transformDirectory(Path input, Path output) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(input)) {
+            files = stream
+                    .filter(Files::isRegularFile)
+                    .map(input::relativize)
+                    .sorted()
+                    .toList();
+        }
+        try (var pool = new ForkJoinPool(parallelism)) {
+            List<Future<byte[]>> results = new ArrayList<>(files.size());
+            for (var file : files) {
+                results.add(pool.submit(() -> {
+                    try (var is = Files.newInputStream(input.resolve(file))) {
+                        return transformEntry(file.toString(), is);
+                    }
+                }));
+            }
+            for (int i = 0; i < files.size(); ++i) {
+                var file = files.get(i);
+                var outfile = output.resolve(file.toString());
+                Files.createDirectories(outfile.getParent());
+                try (OutputStream os = Files.newOutputStream(outfile)) {
+                    os.write(resultOf(file.toString(), results.get(i)));
+                }
+                results.set(i, null);
+            }
+        }
+    }
+
+    private static <T> T resultOf(String name, Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while transforming " + name, ex);
+        } catch (ExecutionException ex) {
+            switch (ex.getCause()) {
+                case IOException ioex -> throw ioex;
+                case UncheckedIOException uioex -> throw uioex.getCause();
+                case Throwable cause -> {
+                    String msg = String.format("transform of %s failed: %s", name, cause.getMessage());
+                    throw new IllegalStateException(msg, cause);
+                }
+            }
+        }
+    }
+
+    // optimizations are applied after first in the order constant folding (followed by removal of the
+    //     unreachable code it creates) then peephole; null counts if an optimization is not wanted
+    private static Supplier<CodeTransform> withOptimizations(Supplier<CodeTransform> first,
+            RewriteCounts<ConstantFolder.Fold> folds, RewriteCounts<PeepholeOptimizer.Rewrite> rewrites) {
+        return () -> {
+            CodeTransform transform = first.get();
+            if (folds != null) {
+                transform = transform.andThen(new ConstantFolder(folds))
+                        .andThen(new UnreachableCodeEliminator());
+            }
+            if (rewrites != null) {
+                transform = transform.andThen(new PeepholeOptimizer(rewrites));
+            }
+            return transform;
+        };
+    }
+
+    private static void usage() {
+        System.err.println("usage: JynxTransformDriver [--threads n] [--trace] [--cache file] [--cache-size n]"
+                + " [--single-analysis] [--parallel-methods] [--frames] [--precise] [--classpath p1:p2]"
+                + " [--depth-only]"
+                + " [--remove-unreachable] [--fold] [--peephole] [--pipeline stage,...|@config-file] [--metrics]"
+                + " [--diagnostics max-per-class]"
+                + " input-jar|input-dir output-jar|output-dir");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        boolean trace = false;
+        boolean single = false;
+        boolean parallelMethods = false;
+        boolean frames = false;
+        boolean precise = false;
+        List<Path> classpath = new ArrayList<>();
+        boolean depthOnly = false;
+        boolean removeUnreachable = false;
+        boolean peephole = false;
+        boolean fold = false;
+        boolean metrics = false;
+        String pipelineSpec = null;
+        int maxDiagnostics = 0;
+        Path cachePath = null;
+        int cacheSize = DEFAULT_CACHE_SIZE;
+        int argi = 0;
+        while (argi < args.length && args[argi].startsWith("--")) {
+            switch (args[argi]) {
+                case "--threads" -> {
+                    if (++argi == args.length) {
+                        usage();
+                    }
+                    parallelism = Integer.parseInt(args[argi]);
+                }
+                case "--trace" -> {
+                    trace = true;
+                }
+                case "--single-analysis" -> {
+                    single = true;
+                }
+                case "--parallel-methods" -> {
+                    parallelMethods = true;
+                }
+                case "--frames" -> {
+                    frames = true;
+                }
+                case "--precise" -> {
+                    precise = true;
+                }
+                case "--classpath" -> {
+                    if (++argi == args.length) {
+                        usage();
+                    }
+                    for (String path : args[argi].split(File.pathSeparator)) {
+                        classpath.add(Path.of(path));
+                    }
+                }
+                case "--depth-only" -> {
+                    depthOnly = true;
+                }
+                case "--remove-unreachable" -> {
+                    removeUnreachable = true;
+                }
+                case "--fold" -> {
+                    fold = true;
+                }
+                case "--peephole" -> {
+                    peephole = true;
+                }
+                case "--pipeline" -> {
+                    if (++argi == args.length) {
+                        usage();
+                    }
+                    pipelineSpec = args[argi];
+                }
+                case "--metrics" -> {
+                    metrics = true;
+                }
+                case "--diagnostics" -> {
+                    if (++argi == args.length) {
+                        usage();
+                    }
+                    maxDiagnostics = Integer.parseInt(args[argi]);
+                }
+                case "--cache" -> {
+                    if (++argi == args.length) {
+                        usage();
+                    }
+                    cachePath = Path.of(args[argi]);
+                }
+                case "--cache-size" -> {
+                    if (++argi == args.length) {
+                        usage();
+                    }
+                    cacheSize = Integer.parseInt(args[argi]);
+                }
+                default -> {
+                    System.err.format("unknown option %s%n", args[argi]);
+                    usage();
+                }
+            }
+            ++argi;
+        }
+        if (args.length - argi != 2) {
+            usage();
+        }
+        var input = Path.of(args[argi]);
+        var output = Path.of(args[argi + 1]);
+        if (metrics) {
+            CheckerMetrics.registerMBean();
+        }
+        if (precise) {
+            if (frames) {
+                usage();
+            }
+            frames = true;
+        }
+        if (!classpath.isEmpty() && !frames) {
+            usage();
+        }
+        boolean failed = false;
+        var folds = fold? ConstantFolder.newCounts(): null;
+        var rewrites = peephole? PeepholeOptimizer.newCounts(): null;
+        if ((fold || peephole) && (maxDiagnostics > 0 || depthOnly || frames || single || cachePath != null)) {
+            usage();
+        }
+        if (parallelMethods && (maxDiagnostics > 0 || depthOnly || removeUnreachable || frames || single
+                || cachePath != null || fold || peephole)) {
+            usage();
+        }
+        if (pipelineSpec != null) {
+            if (maxDiagnostics > 0 || depthOnly || removeUnreachable || frames || single || parallelMethods
+                    || cachePath != null || fold || peephole) {
+                usage();
+            }
+            List<String> names;
+            if (pipelineSpec.startsWith("@")) {
+                names = TransformPipeline.readNames(Path.of(pipelineSpec.substring(1)));
+            } else {
+                names = TransformPipeline.parseNames(pipelineSpec);
+            }
+            var pipeline = TransformPipeline.ofNames(names, trace);
+            var driver = ofPipeline(parallelism, pipeline);
+            driver.transform(input, output);
+            for (var stageCounts : pipeline.counts()) {
+                System.err.println(stageCounts);
+            }
+        } else if (maxDiagnostics > 0) {
+            if (depthOnly || removeUnreachable || frames || single || cachePath != null) {
+                usage();
+            }
+            var diagnostics = new CheckerDiagnostics(maxDiagnostics);
+            var driver = ofDiagnostics(parallelism, trace, diagnostics);
+            driver.transform(input, output);
+            diagnostics.report(System.err);
+            failed = diagnostics.failedMethods() != 0;
+        } else if (depthOnly) {
+            if (removeUnreachable || frames || single || cachePath != null || trace) {
+                usage();
+            }
+            var driver = new JynxTransformDriver(parallelism, JynxDepthChecker::new);
+            driver.transform(input, output);
+        } else if (removeUnreachable) {
+            if (frames || single || cachePath != null || trace) {
+                usage();
+            }
+            var driver = new JynxTransformDriver(parallelism,
+                    withOptimizations(UnreachableCodeEliminator::new, folds, rewrites));
+            driver.transform(input, output);
+        } else if (frames) {
+            if (single || cachePath != null) {
+                usage();
+            }
+            List<Path> paths = new ArrayList<>(classpath);
+            paths.add(input);
+            var hierarchy = hierarchyOf(paths, DEFAULT_HIERARCHY_CACHE_SIZE);
+            var driver = precise? ofPrecise(parallelism, hierarchy): ofFrameGenerator(parallelism, hierarchy);
+            driver.transform(input, output);
+            System.err.format("hierarchy cache hits %d misses %d entries %d%n",
+                    hierarchy.hits(), hierarchy.misses(), hierarchy.size());
+        } else if (parallelMethods) {
+            var driver = ofParallelMethods(parallelism, trace);
+            driver.transform(input, output);
+        } else if (single) {
+            if (cachePath != null) {
+                usage();
+            }
+            var driver = ofSingleAnalysis(parallelism, trace);
+            driver.transform(input, output);
+        } else if (cachePath == null) {
+            boolean tracing = trace;
+            var driver = new JynxTransformDriver(parallelism,
+                    withOptimizations(() -> new JynxStackChecker(tracing), folds, rewrites));
+            driver.transform(input, output);
+        } else {
+            var cache = CheckerCache.load(cachePath, cacheSize);
+            var driver = new JynxTransformDriver(parallelism, trace, cache);
+            driver.transform(input, output);
+            cache.save(cachePath);
+            System.err.format("cache hits %d misses %d entries %d%n",
+                    cache.hits(), cache.misses(), cache.size());
+        }
+        if (folds != null) {
+            System.err.println(folds);
+        }
+        if (rewrites != null) {
+            System.err.println(rewrites);
+        }
+        if (metrics) {
+            System.err.println(CheckerMetrics.global());
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,211 @@
+package com.github.david32768.jynxtransform;
+
+import java.lang.classfile.TypeKind;
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+// operand stack of loadable TypeKinds held as ordinals in a growable byte array
+//     snapshots (used for label states) are exact length byte arrays in the same encoding
+//         they are hash-consed so equal stacks share an array, and one is made per change of stack
+//     also tracks current and maximum depth in slots
+final class KindStack {
+
+    private static final TypeKind[] KINDS = TypeKind.values();
+    private static final int INITIAL_SIZE = 16;
+
+    private byte[] kinds;
+    private int top;
+    private int slots;
+    private int maxSlots;
+    private final byte[] scratch;
+    private final SnapshotPool pool;
+    private byte[] current; // snapshot equal to the stack or null if not known
+
+    KindStack() {
+        this.kinds = new byte[INITIAL_SIZE];
+        this.top = 0;
+        this.slots = 0;
+        this.maxSlots = 0;
+        this.scratch = new byte[2];
+        this.pool = new SnapshotPool();
+        this.current = null;
+    }
+
+    static TypeKind kindOf(byte ordinal) {
+        return KINDS[ordinal];
+    }
+
+    static byte ordinalOf(TypeKind kind) {
+        return (byte)kind.ordinal();
+    }
+
+    private static int slotsOf(byte ordinal) {
+        return KINDS[ordinal].slotSize();
+    }
+
+    static int slotsOf(byte[] snapshot) {
+        int result = 0;
+        for (byte ordinal : snapshot) {
+            result += slotsOf(ordinal);
+        }
+        return result;
+    }
+
+    static byte[] snapshotOf(TypeKind... kinds) {
+        byte[] result = new byte[kinds.length];
+        for (int i = 0; i < kinds.length; ++i) {
+            result[i] = ordinalOf(kinds[i]);
+        }
+        return result;
+    }
+
+    int size() {
+        return top;
+    }
+
+    boolean isEmpty() {
+        return top == 0;
+    }
+
+    int slots() {
+        return slots;
+    }
+
+    int maxSlots() {
+        return maxSlots;
+    }
+
+    void clear() {
+        current = null;
+        top = 0;
+        slots = 0;
+    }
+
+    // also resets maximum depth and discards pooled snapshots
+    void reset() {
+        clear();
+        pool.clear();
+        maxSlots = 0;
+    }
+
+    private void addSlots(int n) {
+        slots += n;
+        maxSlots = Math.max(maxSlots, slots);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed > kinds.length) {
+            kinds = Arrays.copyOf(kinds, Math.max(needed, 2 * kinds.length));
+        }
+    }
+
+    void push(TypeKind kind) {
+        current = null;
+        ensureCapacity(top + 1);
+        kinds[top++] = ordinalOf(kind);
+        addSlots(kind.slotSize());
+    }
+
+    TypeKind pop() {
+        checkDepth(1);
+        current = null;
+        var kind = KINDS[kinds[--top]];
+        slots -= kind.slotSize();
+        return kind;
+    }
+
+    // depth 0 is top of stack
+    TypeKind peek(int depth) {
+        checkDepth(depth + 1);
+        return KINDS[kinds[top - 1 - depth]];
+    }
+
+    void drop(int entries) {
+        checkDepth(entries);
+        current = null;
+        for (int i = 0; i < entries; ++i) {
+            slots -= slotsOf(kinds[--top]);
+        }
+    }
+
+    // inserts a copy of the top 'count' entries below the following 'under' entries
+    //     e.g. DUP_X1 is dup(1, 1), DUP2 of two single slots is dup(2, 0)
+    void dup(int count, int under) {
+        assert count <= scratch.length;
+        checkDepth(count + under);
+        current = null;
+        ensureCapacity(top + count);
+        int base = top - count - under;
+        System.arraycopy(kinds, top - count, scratch, 0, count);
+        System.arraycopy(kinds, base, kinds, base + count, under);
+        System.arraycopy(scratch, 0, kinds, base, count);
+        System.arraycopy(scratch, 0, kinds, base + count + under, count);
+        top += count;
+        for (int i = 0; i < count; ++i) {
+            addSlots(slotsOf(scratch[i]));
+        }
+    }
+
+    void swap() {
+        checkDepth(2);
+        current = null;
+        byte tos = kinds[top - 1];
+        kinds[top - 1] = kinds[top - 2];
+        kinds[top - 2] = tos;
+    }
+
+    private void checkDepth(int entries) {
+        if (entries > top) {
+            String msg = String.format("stack underflow: require %d entries but stack is %s",
+                    entries, this);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    // returned array is shared and must not be modified
+    byte[] snapshot() {
+        if (current == null) {
+            current = pool.intern(kinds, top);
+        }
+        return current;
+    }
+
+    void load(byte[] snapshot) {
+        current = top == 0? snapshot: null;
+        ensureCapacity(top + snapshot.length);
+        System.arraycopy(snapshot, 0, kinds, top, snapshot.length);
+        top += snapshot.length;
+        addSlots(slotsOf(snapshot));
+    }
+
+    boolean matches(byte[] snapshot) {
+        return snapshot == current || Arrays.equals(kinds, 0, top, snapshot, 0, snapshot.length);
+    }
+
+    // hash of stack kinds (as Arrays.hashCode of snapshot)
+    int hash() {
+        int result = 1;
+        for (int i = 0; i < top; ++i) {
+            result = 31 * result + kinds[i];
+        }
+        return result;
+    }
+
+    static String toString(byte[] snapshot) {
+        return toString(snapshot, snapshot.length);
+    }
+
+    private static String toString(byte[] array, int length) {
+        StringJoiner sj = new StringJoiner(", ", "[", "]");
+        for (int i = 0; i < length; ++i) {
+            sj.add(KINDS[array[i]].toString());
+        }
+        return sj.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toString(kinds, top);
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.github.david32768.jynxtransform;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// lock-free histogram of non-negative values with power of two buckets
+//     bucket 0 counts zero; bucket i (i > 0) counts values in [2^(i-1), 2^i)
+final class Log2Histogram {
+
+    private static final int BUCKETS = Long.SIZE + 1;
+
+    private final LongAdder[] buckets;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    Log2Histogram() {
+        this.buckets = new LongAdder[BUCKETS];
+        for (int i = 0; i < BUCKETS; ++i) {
+            buckets[i] = new LongAdder();
+        }
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator(Long::max, 0);
+    }
+
+    void record(long value) {
+        if (value < 0) {
+            String msg = String.format("value must not be negative but is %d", value);
+            throw new IllegalArgumentException(msg);
+        }
+        buckets[Long.SIZE - Long.numberOfLeadingZeros(value)].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    long count() {
+        long result = 0;
+        for (var bucket : buckets) {
+            result += bucket.sum();
+        }
+        return result;
+    }
+
+    long sum() {
+        return sum.sum();
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    // counts up to the highest non-empty bucket
+    long[] counts() {
+        long[] result = new long[BUCKETS];
+        int length = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            result[i] = buckets[i].sum();
+            if (result[i] != 0) {
+                length = i + 1;
+            }
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    void reset() {
+        for (var bucket : buckets) {
+            bucket.reset();
+        }
+        sum.reset();
+        max.reset();
+    }
+
+}
@@ -0,0 +1,225 @@
+package com.github.david32768.jynxtransform;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+// read only view of a jar (zip) file mapped into memory
+//     entries are located from the central directory (including zip64)
+//     entry data is read directly from the mapping; deflated entries are inflated with per thread Inflaters
+//     the mapping uses an automatic arena (Inflater does not accept buffers of closeable shared arenas)
+//         so is unmapped when no longer reachable
+final class MappedJar {
+
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    private static final ValueLayout.OfShort U2 = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfInt U4 = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong U8 = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private static final int LOCAL_SIG = 0x04034b50;
+    private static final int CENTRAL_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final int LOCAL_SIZE = 30;
+    private static final int CENTRAL_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int MAX_COMMENT = 0xffff;
+    private static final long U4_MAX = 0xffffffffL;
+    private static final int ENCRYPTED_FLAG = 0x0001;
+
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    // dosTime is the combined dos date and time as stored in the zip
+    record Entry(String name, int method, int dosTime, int crc,
+            long compressedSize, long size, long dataOffset) {
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+    }
+
+    private final MemorySegment segment;
+    private final List<Entry> entries;
+
+    private MappedJar(MemorySegment segment) throws ZipException {
+        this.segment = segment;
+        this.entries = readCentralDirectory();
+    }
+
+    static MappedJar open(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.ofAuto());
+            return new MappedJar(segment);
+        }
+    }
+
+    List<Entry> entries() {
+        return entries;
+    }
+
+    private int u2(long offset) {
+        return Short.toUnsignedInt(segment.get(U2, offset));
+    }
+
+    private long u4(long offset) {
+        return Integer.toUnsignedLong(segment.get(U4, offset));
+    }
+
+    private long u8(long offset) {
+        return segment.get(U8, offset);
+    }
+
+    private void checkSignature(long offset, int signature, String what) throws ZipException {
+        if (offset < 0 || offset + 4 > segment.byteSize() || segment.get(U4, offset) != signature) {
+            String msg = String.format("%s signature not found at offset %d", what, offset);
+            throw new ZipException(msg);
+        }
+    }
+
+    private long findEnd() throws ZipException {
+        long limit = Math.max(0, segment.byteSize() - END_SIZE - MAX_COMMENT);
+        for (long offset = segment.byteSize() - END_SIZE; offset >= limit; --offset) {
+            if (segment.get(U4, offset) == END_SIG
+                    && offset + END_SIZE + u2(offset + 20) == segment.byteSize()) {
+                return offset;
+            }
+        }
+        throw new ZipException("end of central directory not found");
+    }
+
+    private List<Entry> readCentralDirectory() throws ZipException {
+        long end = findEnd();
+        long count = u2(end + 10);
+        long cdoffset = u4(end + 16);
+        long locator = end - ZIP64_LOCATOR_SIZE;
+        if (locator >= 0 && segment.get(U4, locator) == ZIP64_LOCATOR_SIG) {
+            long end64 = u8(locator + 8);
+            checkSignature(end64, ZIP64_END_SIG, "zip64 end of central directory");
+            count = u8(end64 + 32);
+            cdoffset = u8(end64 + 48);
+        }
+        if (count > Integer.MAX_VALUE) {
+            String msg = String.format("too many entries %d", count);
+            throw new ZipException(msg);
+        }
+        List<Entry> result = new ArrayList<>((int)count);
+        long offset = cdoffset;
+        for (long i = 0; i < count; ++i) {
+            checkSignature(offset, CENTRAL_SIG, "central directory");
+            int flags = u2(offset + 8);
+            int method = u2(offset + 10);
+            int dosTime = segment.get(U4, offset + 12);
+            int crc = segment.get(U4, offset + 16);
+            long csize = u4(offset + 20);
+            long size = u4(offset + 24);
+            int namelen = u2(offset + 28);
+            int extralen = u2(offset + 30);
+            int commentlen = u2(offset + 32);
+            long local = u4(offset + 42);
+            long nameoffset = offset + CENTRAL_SIZE;
+            String name = new String(segment.asSlice(nameoffset, namelen).toArray(ValueLayout.JAVA_BYTE),
+                    StandardCharsets.UTF_8);
+            if ((flags & ENCRYPTED_FLAG) != 0) {
+                String msg = String.format("entry %s is encrypted", name);
+                throw new ZipException(msg);
+            }
+            long extra = nameoffset + namelen;
+            long extraend = extra + extralen;
+            while (extra + 4 <= extraend) {
+                int id = u2(extra);
+                int datalen = u2(extra + 2);
+                if (id == ZIP64_EXTRA_ID) {
+                    long field = extra + 4;
+                    if (size == U4_MAX) {
+                        size = u8(field);
+                        field += 8;
+                    }
+                    if (csize == U4_MAX) {
+                        csize = u8(field);
+                        field += 8;
+                    }
+                    if (local == U4_MAX) {
+                        local = u8(field);
+                    }
+                }
+                extra += 4 + datalen;
+            }
+            checkSignature(local, LOCAL_SIG, "local header");
+            long data = local + LOCAL_SIZE + u2(local + 26) + u2(local + 28);
+            result.add(new Entry(name, method, dosTime, crc, csize, size, data));
+            offset = extraend + commentlen;
+        }
+        return result;
+    }
+
+    // raw (possibly compressed) data of entry
+    MemorySegment raw(Entry entry) {
+        return segment.asSlice(entry.dataOffset(), entry.compressedSize());
+    }
+
+    byte[] read(Entry entry) throws ZipException {
+        if (entry.size() > Integer.MAX_VALUE - 8) {
+            String msg = String.format("entry %s is too large (%d bytes)", entry.name(), entry.size());
+            throw new ZipException(msg);
+        }
+        byte[] result = new byte[(int)entry.size()];
+        var data = raw(entry);
+        switch (entry.method()) {
+            case STORED -> {
+                MemorySegment.copy(data, ValueLayout.JAVA_BYTE, 0, result, 0, result.length);
+            }
+            case DEFLATED -> {
+                inflate(entry, data, result);
+            }
+            default -> {
+                String msg = String.format("entry %s has unsupported compression method %d",
+                        entry.name(), entry.method());
+                throw new ZipException(msg);
+            }
+        }
+        return result;
+    }
+
+    private static void inflate(Entry entry, MemorySegment data, byte[] result) throws ZipException {
+        var inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(data.asByteBuffer());
+        try {
+            int length = 0;
+            while (length < result.length && !inflater.finished()) {
+                int n = inflater.inflate(result, length, result.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != result.length) {
+                String msg = String.format("entry %s inflated to %d bytes but expected %d",
+                        entry.name(), length, result.length);
+                throw new ZipException(msg);
+            }
+        } catch (DataFormatException ex) {
+            String msg = String.format("entry %s: %s", entry.name(), ex.getMessage());
+            throw new ZipException(msg);
+        }
+    }
+
+}
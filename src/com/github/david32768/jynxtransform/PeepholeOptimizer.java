@@ -0,0 +1,205 @@
+package com.github.david32768.jynxtransform;
+
+import static java.lang.classfile.Opcode.*;
+import java.lang.classfile.instruction.*;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.CodeTransform;
+import java.lang.classfile.Instruction;
+import java.lang.classfile.Opcode;
+import java.util.ArrayList;
+import java.util.List;
+
+// Removes or rewrites redundant adjacent instruction pairs
+//     push (constant or load) POP/POP2      removed if the pop is of the pushed size
+//     DUP POP, DUP2 POP2                    removed
+//     SWAP SWAP                             removed
+//     xSTORE n xLOAD n                      DUP/DUP2 xSTORE n
+//     GOTO L, L:                            GOTO removed
+// a pair must not contain a label or other pseudo instruction so the stack at each label is unchanged
+//     and each rewrite leaves the stack after the pair as it was
+// intended to follow JynxStackChecker (which has checked the stack and dropped unreachable padding)
+// instructions that may be the first of a pair are held back until the next is known
+//     so that a rewrite may expose another e.g. ICONST_1 ICONST_2 POP POP
+public class PeepholeOptimizer implements CodeTransform {
+
+    public enum Rewrite {
+        PUSH_POP,
+        DUP_POP,
+        SWAP_SWAP,
+        STORE_LOAD,
+        GOTO_NEXT,
+        ;
+    }
+
+    private final RewriteCounts<Rewrite> counts;
+    private final List<Instruction> window;
+    private final List<CodeElement> afterGoto;
+
+    public PeepholeOptimizer() {
+        this(newCounts());
+    }
+
+    public PeepholeOptimizer(RewriteCounts<Rewrite> counts) {
+        this.counts = counts;
+        this.window = new ArrayList<>();
+        this.afterGoto = new ArrayList<>();
+    }
+
+    public static RewriteCounts<Rewrite> newCounts() {
+        return new RewriteCounts<>("peephole rewrites", Rewrite.class);
+    }
+
+    public RewriteCounts<Rewrite> counts() {
+        return counts;
+    }
+
+    @Override
+    public void atStart(CodeBuilder builder) {
+        window.clear();
+        afterGoto.clear();
+    }
+
+    @Override
+    public void accept(CodeBuilder builder, CodeElement element) {
+        if (element instanceof Instruction inst) {
+            flushAfterGoto(builder);
+            processInstruction(builder, inst);
+        } else if (!window.isEmpty() && isGoto(window.getLast())) {
+            afterGoto.add(element);
+            var target = ((BranchInstruction)window.getLast()).target();
+            if (element instanceof LabelTarget lt && lt.label().equals(target)) {
+                counts.increment(Rewrite.GOTO_NEXT);
+                window.removeLast();
+                flush(builder);
+            }
+        } else {
+            flush(builder);
+            builder.with(element);
+        }
+    }
+
+    @Override
+    public void atEnd(CodeBuilder builder) {
+        flush(builder);
+    }
+
+    private void flush(CodeBuilder builder) {
+        for (var inst : window) {
+            builder.with(inst);
+        }
+        window.clear();
+        for (var element : afterGoto) {
+            builder.with(element);
+        }
+        afterGoto.clear();
+    }
+
+    // a goto that is followed by an instruction before its target is not removed
+    private void flushAfterGoto(CodeBuilder builder) {
+        if (!afterGoto.isEmpty()) {
+            flush(builder);
+        }
+    }
+
+    private static boolean isGoto(Instruction inst) {
+        var op = inst.opcode();
+        return op == GOTO || op == GOTO_W;
+    }
+
+    private void processInstruction(CodeBuilder builder, Instruction inst) {
+        if (!window.isEmpty() && rewrite(window.getLast(), inst)) {
+            return;
+        }
+        if (isCandidate(inst)) {
+            window.add(inst);
+        } else {
+            flush(builder);
+            builder.with(inst);
+        }
+    }
+
+    // true if inst may be the first of a pair
+    private static boolean isCandidate(Instruction inst) {
+        var op = inst.opcode();
+        return switch (op.kind()) {
+            case CONSTANT -> isPureConstant((ConstantInstruction)inst);
+            case LOAD, STORE -> true;
+            case STACK -> op == DUP || op == DUP2 || op == SWAP;
+            case BRANCH -> isGoto(inst);
+            default -> false;
+        };
+    }
+
+    // a constant whose load cannot fail or run code (unlike class, method handle and dynamic constants)
+    private static boolean isPureConstant(ConstantInstruction inst) {
+        return switch (inst.opcode()) {
+            case LDC, LDC_W, LDC2_W -> switch (inst.constantValue()) {
+                case Integer i -> true;
+                case Float f -> true;
+                case Long l -> true;
+                case Double d -> true;
+                case String s -> true;
+                default -> false;
+            };
+            default -> true;
+        };
+    }
+
+    // returns true if inst has been combined with prev (the last instruction of the window)
+    private boolean rewrite(Instruction prev, Instruction inst) {
+        var op = inst.opcode();
+        var prevop = prev.opcode();
+        switch (op) {
+            case POP, POP2 -> {
+                int slots = op == POP? 1: 2;
+                switch (prevop.kind()) {
+                    case CONSTANT -> {
+                        if (((ConstantInstruction)prev).typeKind().slotSize() == slots) {
+                            return remove(Rewrite.PUSH_POP);
+                        }
+                    }
+                    case LOAD -> {
+                        if (((LoadInstruction)prev).typeKind().slotSize() == slots) {
+                            return remove(Rewrite.PUSH_POP);
+                        }
+                    }
+                    case STACK -> {
+                        if (prevop == DUP && op == POP || prevop == DUP2 && op == POP2) {
+                            return remove(Rewrite.DUP_POP);
+                        }
+                    }
+                    default -> {}
+                }
+            }
+            case SWAP -> {
+                if (prevop == SWAP) {
+                    return remove(Rewrite.SWAP_SWAP);
+                }
+            }
+            default -> {
+                if (op.kind() == Opcode.Kind.LOAD && prevop.kind() == Opcode.Kind.STORE) {
+                    var load = (LoadInstruction)inst;
+                    var store = (StoreInstruction)prev;
+                    if (load.slot() == store.slot() && load.typeKind() == store.typeKind()) {
+                        counts.increment(Rewrite.STORE_LOAD);
+                        window.removeLast();
+                        var dup = StackInstruction.of(store.typeKind().slotSize() == 1? DUP: DUP2);
+                        window.add(dup);
+                        window.add(store);
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean remove(Rewrite rewrite) {
+        counts.increment(rewrite);
+        window.removeLast();
+        return true;
+    }
+
+}
@@ -0,0 +1,201 @@
+package com.github.david32768.jynxtransform;
+
+import static java.lang.constant.ConstantDescs.CD_Object;
+
+import java.lang.constant.ClassDesc;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// merge and assignability of verification types using a ClassHierarchy
+//     interfaces are treated as java.lang.Object (as by the verifier)
+//     a merge that depends on a class the hierarchy does not know is UNKNOWN_REFERENCE
+//         which is treated as java.lang.Object except that any reference type may be assigned from it
+//     mayBeAssignable is false only if the hierarchy shows the types are not assignable
+final class ReferenceTypes {
+
+    private static final Set<ClassDesc> ARRAY_INTERFACES = Set.of(
+            ClassDesc.of("java.lang.Cloneable"), ClassDesc.of("java.io.Serializable"));
+
+    private final ClassHierarchy hierarchy;
+
+    ReferenceTypes(ClassHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+    }
+
+    private boolean isInterface(ClassDesc desc) {
+        var info = hierarchy.classInfo(desc);
+        return info != null && info.isInterface();
+    }
+
+    // desc first; ends with java.lang.Object (assumed superclass of unknown classes)
+    private List<ClassDesc> superclasses(ClassDesc desc) {
+        List<ClassDesc> result = new ArrayList<>();
+        var current = desc;
+        while (current != null && !current.equals(CD_Object)) {
+            result.add(current);
+            var info = hierarchy.classInfo(current);
+            current = info == null? null: info.superclass();
+        }
+        result.add(CD_Object);
+        return result;
+    }
+
+    // true if the superclasses of desc are not all known
+    private boolean isPartial(List<ClassDesc> superclasses) {
+        if (superclasses.size() < 2) {
+            return false;
+        }
+        var last = superclasses.get(superclasses.size() - 2);
+        var info = hierarchy.classInfo(last);
+        return info == null || info.superclass() == null;
+    }
+
+    // null if not known as a superclass of an unknown class may be the common superclass
+    private ClassDesc commonSuperclass(ClassDesc first, ClassDesc second) {
+        if (first.equals(second)) {
+            return first;
+        }
+        if (first.isArray() || second.isArray()) {
+            if (first.isArray() && second.isArray()) {
+                var component1 = first.componentType();
+                var component2 = second.componentType();
+                if (!component1.isPrimitive() && !component2.isPrimitive()) {
+                    var common = commonSuperclass(component1, component2);
+                    return common == null? null: common.arrayType();
+                }
+            }
+            return CD_Object;
+        }
+        if (isInterface(first) || isInterface(second)) {
+            return CD_Object;
+        }
+        var supers1 = superclasses(first);
+        var supers2 = superclasses(second);
+        for (var desc : supers2) {
+            if (supers1.contains(desc)) {
+                if (desc.equals(CD_Object) && (isPartial(supers1) || isPartial(supers2))) {
+                    return null;
+                }
+                return desc;
+            }
+        }
+        return CD_Object;
+    }
+
+    private boolean isAssignable(ClassDesc target, ClassDesc source) {
+        if (target.equals(source) || target.equals(CD_Object)) {
+            return true;
+        }
+        if (source.isArray()) {
+            if (target.isArray()) {
+                var tcomponent = target.componentType();
+                var scomponent = source.componentType();
+                if (tcomponent.isPrimitive() || scomponent.isPrimitive()) {
+                    return tcomponent.equals(scomponent);
+                }
+                return isAssignable(tcomponent, scomponent);
+            }
+            return ARRAY_INTERFACES.contains(target);
+        }
+        if (target.isArray()) {
+            return false;
+        }
+        return isInterface(target) || superclasses(source).contains(target);
+    }
+
+    // also true if target or a superclass of source is unknown
+    private boolean mayBeAssignable(ClassDesc target, ClassDesc source) {
+        if (target.equals(source) || target.equals(CD_Object)) {
+            return true;
+        }
+        if (source.isArray()) {
+            if (target.isArray()) {
+                var tcomponent = target.componentType();
+                var scomponent = source.componentType();
+                if (tcomponent.isPrimitive() || scomponent.isPrimitive()) {
+                    return tcomponent.equals(scomponent);
+                }
+                return mayBeAssignable(tcomponent, scomponent);
+            }
+            return ARRAY_INTERFACES.contains(target) || hierarchy.classInfo(target) == null;
+        }
+        if (target.isArray()) {
+            return false;
+        }
+        var targetInfo = hierarchy.classInfo(target);
+        if (targetInfo == null || targetInfo.isInterface()) {
+            return true;
+        }
+        var current = source;
+        while (current != null && !current.equals(CD_Object)) {
+            if (current.equals(target)) {
+                return true;
+            }
+            var info = hierarchy.classInfo(current);
+            if (info == null) {
+                return true;
+            }
+            current = info.superclass();
+        }
+        return false;
+    }
+
+    private static boolean isReference(VType type) {
+        return type instanceof VType.Reference || type == VType.Simple.NULL
+                || type == VType.Simple.UNKNOWN_REFERENCE;
+    }
+
+    // TOP if not mergeable
+    VType merge(VType first, VType second) {
+        if (first.equals(second)) {
+            return first;
+        }
+        if (isReference(first) && isReference(second)) {
+            if (first == VType.Simple.NULL) {
+                return second;
+            }
+            if (second == VType.Simple.NULL) {
+                return first;
+            }
+            if (first == VType.Simple.UNKNOWN_REFERENCE || second == VType.Simple.UNKNOWN_REFERENCE) {
+                return VType.Simple.UNKNOWN_REFERENCE;
+            }
+            var desc1 = ((VType.Reference)first).desc();
+            var desc2 = ((VType.Reference)second).desc();
+            var common = commonSuperclass(desc1, desc2);
+            return common == null? VType.Simple.UNKNOWN_REFERENCE: new VType.Reference(common);
+        }
+        return VType.Simple.TOP;
+    }
+
+    boolean isAssignable(VType target, VType source) {
+        if (target.equals(source) || target == VType.Simple.TOP) {
+            return true;
+        }
+        if (target == VType.Simple.UNKNOWN_REFERENCE) {
+            return isReference(source);
+        }
+        if (target instanceof VType.Reference(ClassDesc tdesc)) {
+            return switch (source) {
+                case VType.Simple.NULL -> true;
+                case VType.Simple.UNKNOWN_REFERENCE -> tdesc.equals(CD_Object);
+                case VType.Reference(ClassDesc sdesc) -> isAssignable(tdesc, sdesc);
+                default -> false;
+            };
+        }
+        return false;
+    }
+
+    boolean mayBeAssignable(VType target, VType source) {
+        if (source == VType.Simple.UNKNOWN_REFERENCE) {
+            return target == VType.Simple.TOP || isReference(target);
+        }
+        if (target instanceof VType.Reference(ClassDesc tdesc)
+                && source instanceof VType.Reference(ClassDesc sdesc)) {
+            return mayBeAssignable(tdesc, sdesc);
+        }
+        return isAssignable(target, source);
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.github.david32768.jynxtransform;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// counts of the rewrites of each kind made by an optimizing transform
+//     may be shared by transforms in different threads
+public final class RewriteCounts<E extends Enum<E>> {
+
+    private final String name;
+    private final E[] kinds;
+    private final LongAdder[] counts;
+
+    public RewriteCounts(String name, Class<E> kindClass) {
+        this.name = name;
+        this.kinds = kindClass.getEnumConstants();
+        this.counts = new LongAdder[kinds.length];
+        for (int i = 0; i < counts.length; ++i) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    void increment(E kind) {
+        counts[kind.ordinal()].increment();
+    }
+
+    public long count(E kind) {
+        return counts[kind.ordinal()].sum();
+    }
+
+    public long total() {
+        long total = 0;
+        for (var count : counts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        var sb = new StringBuilder(name);
+        for (var kind : kinds) {
+            sb.append(String.format(" %s %d", kind.name().toLowerCase(), count(kind)));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.github.david32768.jynxtransform;
+
+import java.util.Arrays;
+
+// hash-consing pool of stack snapshots (exact length byte arrays as KindStack)
+//     equal stacks share one array which must not be modified
+//     lookup is from a range of the live stack array so a hit does not allocate
+//     open addressing with linear probing; not thread safe
+final class SnapshotPool {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAX_RETAINED_CAPACITY = 1024;
+
+    private byte[][] snapshots;
+    private int[] hashes;
+    private int count;
+
+    SnapshotPool() {
+        this.snapshots = new byte[INITIAL_CAPACITY][];
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.count = 0;
+    }
+
+    int size() {
+        return count;
+    }
+
+    // a large table is released rather than cleared
+    void clear() {
+        if (snapshots.length > MAX_RETAINED_CAPACITY) {
+            snapshots = new byte[INITIAL_CAPACITY][];
+            hashes = new int[INITIAL_CAPACITY];
+        } else if (count != 0) {
+            Arrays.fill(snapshots, null);
+        }
+        count = 0;
+    }
+
+    private static int hash(byte[] kinds, int length) {
+        int result = 1;
+        for (int i = 0; i < length; ++i) {
+            result = 31 * result + kinds[i];
+        }
+        return result ^ (result >>> 16);
+    }
+
+    // returns the pooled snapshot equal to kinds[0, length), adding a copy if there is none
+    byte[] intern(byte[] kinds, int length) {
+        int hash = hash(kinds, length);
+        int mask = snapshots.length - 1;
+        int index = hash & mask;
+        for (byte[] snapshot = snapshots[index]; snapshot != null; snapshot = snapshots[index]) {
+            if (hashes[index] == hash && Arrays.equals(snapshot, 0, snapshot.length, kinds, 0, length)) {
+                return snapshot;
+            }
+            index = (index + 1) & mask;
+        }
+        byte[] snapshot = Arrays.copyOf(kinds, length);
+        snapshots[index] = snapshot;
+        hashes[index] = hash;
+        if (++count > snapshots.length / 2) {
+            rehash();
+        }
+        return snapshot;
+    }
+
+    private void rehash() {
+        byte[][] oldSnapshots = snapshots;
+        int[] oldHashes = hashes;
+        snapshots = new byte[2 * oldSnapshots.length][];
+        hashes = new int[snapshots.length];
+        int mask = snapshots.length - 1;
+        for (int i = 0; i < oldSnapshots.length; ++i) {
+            if (oldSnapshots[i] != null) {
+                int index = oldHashes[i] & mask;
+                while (snapshots[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                snapshots[index] = oldSnapshots[i];
+                hashes[index] = oldHashes[i];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.github.david32768.jynxtransform;
+
+import java.lang.classfile.Instruction;
+import java.lang.classfile.Label;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.TypeKind;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// result of JynxStackChecker for one method
+//     maximum stack depth in slots and the stack at each label (bound or targeted)
+//     and, if recorded, the stack before each instruction analysed
+//         instructions are looked up by identity so an instruction not analysed is unknown
+//         (as is every instruction if not recorded, see TransformPipeline)
+//     all instructions analysed are reachable if the checker did not assume a label after an unconditional
+//         branch is reachable and there are no exception handlers (whose ranges may be unreachable)
+//     read only, so may be shared by the stages of a TransformPipeline
+public final class StackAnalysis {
+
+    private final int maxStack;
+    private final Map<Label, byte[]> labelStacks;
+    private final Map<Instruction, byte[]> instructionStacks;
+    private final int[] droppedElements;
+    private final boolean needsFrames;
+    private final boolean allReachable;
+    private final int conditionalBranches;
+
+    StackAnalysis(int maxStack, Map<Label, byte[]> labelStacks, Map<Instruction, byte[]> instructionStacks,
+            int[] droppedElements, boolean needsFrames, boolean allReachable, int conditionalBranches) {
+        this.maxStack = maxStack;
+        this.labelStacks = labelStacks;
+        this.instructionStacks = instructionStacks;
+        this.droppedElements = droppedElements;
+        this.needsFrames = needsFrames;
+        this.allReachable = allReachable;
+        this.conditionalBranches = conditionalBranches;
+    }
+
+    public int maxStack() {
+        return maxStack;
+    }
+
+    // true if code has branches, switches, jsr or exception handlers
+    //     i.e. a StackMapTable is required (for class version 50 or above)
+    public boolean needsFrames() {
+        return needsFrames;
+    }
+
+    // true if every instruction analysed (and not dropped) is known to be reachable
+    public boolean allReachable() {
+        return allReachable;
+    }
+
+    // number of conditional branches and switches analysed
+    //     (a transform that folds a branch changes it and so may make code unreachable)
+    public int conditionalBranches() {
+        return conditionalBranches;
+    }
+
+    static boolean isConditionalBranch(Opcode op) {
+        return switch (op.kind()) {
+            case BRANCH -> !op.isUnconditionalBranch();
+            case LOOKUP_SWITCH, TABLE_SWITCH -> true;
+            default -> false;
+        };
+    }
+
+    public int droppedCount() {
+        return droppedElements.length;
+    }
+
+    // element indices (in CodeModel order) of unreachable constants dropped by the checker
+    int[] droppedElements() {
+        return droppedElements;
+    }
+
+    public Set<Label> labels() {
+        return labelStacks.keySet();
+    }
+
+    private static Optional<List<TypeKind>> kindsOf(byte[] snapshot) {
+        if (snapshot == null) {
+            return Optional.empty();
+        }
+        List<TypeKind> result = new ArrayList<>(snapshot.length);
+        for (byte ordinal : snapshot) {
+            result.add(KindStack.kindOf(ordinal));
+        }
+        return Optional.of(result);
+    }
+
+    // bottom of stack first
+    public Optional<List<TypeKind>> stackAt(Label label) {
+        return kindsOf(labelStacks.get(label));
+    }
+
+    // stack depth in slots at label or -1 if label unknown
+    public int slotsAt(Label label) {
+        byte[] snapshot = labelStacks.get(label);
+        return snapshot == null? -1: KindStack.slotsOf(snapshot);
+    }
+
+    // bottom of stack first
+    public Optional<List<TypeKind>> stackBefore(Instruction inst) {
+        return kindsOf(instructionStacks.get(inst));
+    }
+
+    // kind of the entry at depth (0 is top of stack) before inst or null if unknown or not that deep
+    public TypeKind kindBefore(Instruction inst, int depth) {
+        byte[] snapshot = instructionStacks.get(inst);
+        if (snapshot == null || depth >= snapshot.length) {
+            return null;
+        }
+        return KindStack.kindOf(snapshot[snapshot.length - 1 - depth]);
+    }
+
+    // stack depth in slots before inst or -1 if inst unknown
+    public int slotsBefore(Instruction inst) {
+        byte[] snapshot = instructionStacks.get(inst);
+        return snapshot == null? -1: KindStack.slotsOf(snapshot);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("max stack %d labels %d dropped %d%s",
+                maxStack, labelStacks.size(), droppedElements.length, needsFrames? " frames": "");
+    }
+
+}
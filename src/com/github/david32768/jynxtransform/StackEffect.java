@@ -0,0 +1,186 @@
+package com.github.david32768.jynxtransform;
+
+import static java.lang.classfile.Opcode.*;
+
+import java.lang.classfile.Opcode;
+import java.lang.classfile.TypeKind;
+import java.util.EnumSet;
+import java.util.Set;
+
+// stack effect of instructions whose shape depends only on the opcode
+//     the table is built and the opcode classification checked once at class initialisation
+//     instructions with no entry (field, invoke, invokedynamic, multianewarray, ldc, stack and jsr)
+//     must be computed from the instruction itself
+final class StackEffect {
+
+    private static final TypeKind I = TypeKind.IntType;
+    private static final TypeKind J = TypeKind.LongType;
+    private static final TypeKind F = TypeKind.FloatType;
+    private static final TypeKind D = TypeKind.DoubleType;
+    private static final TypeKind A = TypeKind.ReferenceType;
+
+    private static final String BAD_OP = "misclassified or unknown op - ";
+    private static final String MISSING = "missing case for op - ";
+    private static final String DUPLICATE = "duplicate case for op - ";
+
+    private static final Set<Opcode.Kind> VARIABLE_KINDS = EnumSet.of(
+            Opcode.Kind.FIELD_ACCESS, Opcode.Kind.INVOKE, Opcode.Kind.INVOKE_DYNAMIC,
+            Opcode.Kind.NEW_MULTI_ARRAY, Opcode.Kind.STACK, Opcode.Kind.DISCONTINUED_JSR);
+    private static final Set<Opcode> VARIABLE_CONSTANTS = EnumSet.of(LDC, LDC_W, LDC2_W);
+
+    private static final StackEffect[] EFFECTS = new StackEffect[Opcode.values().length];
+
+    // pops are in the order they are removed i.e. top of stack first
+    final TypeKind[] pops;
+    final TypeKind[] pushes;
+    final int popSlots;
+    final int slotDelta;
+
+    private StackEffect(TypeKind[] pops, TypeKind[] pushes) {
+        this.pops = pops;
+        this.pushes = pushes;
+        this.popSlots = slots(pops);
+        this.slotDelta = slots(pushes) - popSlots;
+    }
+
+    private static int slots(TypeKind[] kinds) {
+        int result = 0;
+        for (var kind : kinds) {
+            result += kind.slotSize();
+        }
+        return result;
+    }
+
+    // returns null if stack effect is not fixed by the opcode
+    static StackEffect of(Opcode op) {
+        return EFFECTS[op.ordinal()];
+    }
+
+    private static TypeKind[] kinds(TypeKind... kinds) {
+        return kinds;
+    }
+
+    private static void define(Opcode.Kind kind, TypeKind[] pops, TypeKind[] pushes, Opcode... ops) {
+        var effect = new StackEffect(pops, pushes);
+        for (var op : ops) {
+            if (op.kind() != kind) {
+                throw new IllegalStateException(BAD_OP + op);
+            }
+            if (EFFECTS[op.ordinal()] != null) {
+                throw new IllegalStateException(DUPLICATE + op);
+            }
+            EFFECTS[op.ordinal()] = effect;
+        }
+    }
+
+    private static void check() {
+        for (var op : Opcode.values()) {
+            if (EFFECTS[op.ordinal()] == null
+                    && !VARIABLE_KINDS.contains(op.kind())
+                    && !VARIABLE_CONSTANTS.contains(op)) {
+                throw new IllegalStateException(MISSING + op);
+            }
+        }
+    }
+
+    static {
+        var none = kinds();
+
+        define(Opcode.Kind.ARRAY_LOAD, kinds(I, A), kinds(I), IALOAD, BALOAD, CALOAD, SALOAD);
+        define(Opcode.Kind.ARRAY_LOAD, kinds(I, A), kinds(J), LALOAD);
+        define(Opcode.Kind.ARRAY_LOAD, kinds(I, A), kinds(F), FALOAD);
+        define(Opcode.Kind.ARRAY_LOAD, kinds(I, A), kinds(D), DALOAD);
+        define(Opcode.Kind.ARRAY_LOAD, kinds(I, A), kinds(A), AALOAD);
+
+        define(Opcode.Kind.ARRAY_STORE, kinds(I, I, A), none, IASTORE, BASTORE, CASTORE, SASTORE);
+        define(Opcode.Kind.ARRAY_STORE, kinds(J, I, A), none, LASTORE);
+        define(Opcode.Kind.ARRAY_STORE, kinds(F, I, A), none, FASTORE);
+        define(Opcode.Kind.ARRAY_STORE, kinds(D, I, A), none, DASTORE);
+        define(Opcode.Kind.ARRAY_STORE, kinds(A, I, A), none, AASTORE);
+
+        define(Opcode.Kind.BRANCH, kinds(I), none, IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE);
+        define(Opcode.Kind.BRANCH, kinds(A), none, IFNULL, IFNONNULL);
+        define(Opcode.Kind.BRANCH, kinds(I, I), none,
+                IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE);
+        define(Opcode.Kind.BRANCH, kinds(A, A), none, IF_ACMPEQ, IF_ACMPNE);
+        define(Opcode.Kind.BRANCH, none, none, GOTO, GOTO_W);
+
+        define(Opcode.Kind.CONSTANT, none, kinds(A), ACONST_NULL);
+        define(Opcode.Kind.CONSTANT, none, kinds(I), BIPUSH, SIPUSH,
+                ICONST_M1, ICONST_0, ICONST_1, ICONST_2, ICONST_3, ICONST_4, ICONST_5);
+        define(Opcode.Kind.CONSTANT, none, kinds(J), LCONST_0, LCONST_1);
+        define(Opcode.Kind.CONSTANT, none, kinds(F), FCONST_0, FCONST_1, FCONST_2);
+        define(Opcode.Kind.CONSTANT, none, kinds(D), DCONST_0, DCONST_1);
+
+        define(Opcode.Kind.CONVERT, kinds(I), kinds(J), I2L);
+        define(Opcode.Kind.CONVERT, kinds(I), kinds(F), I2F);
+        define(Opcode.Kind.CONVERT, kinds(I), kinds(D), I2D);
+        define(Opcode.Kind.CONVERT, kinds(I), kinds(I), I2B, I2C, I2S);
+        define(Opcode.Kind.CONVERT, kinds(J), kinds(I), L2I);
+        define(Opcode.Kind.CONVERT, kinds(J), kinds(F), L2F);
+        define(Opcode.Kind.CONVERT, kinds(J), kinds(D), L2D);
+        define(Opcode.Kind.CONVERT, kinds(F), kinds(I), F2I);
+        define(Opcode.Kind.CONVERT, kinds(F), kinds(J), F2L);
+        define(Opcode.Kind.CONVERT, kinds(F), kinds(D), F2D);
+        define(Opcode.Kind.CONVERT, kinds(D), kinds(I), D2I);
+        define(Opcode.Kind.CONVERT, kinds(D), kinds(J), D2L);
+        define(Opcode.Kind.CONVERT, kinds(D), kinds(F), D2F);
+
+        define(Opcode.Kind.DISCONTINUED_RET, none, none, RET, RET_W);
+
+        define(Opcode.Kind.LOAD, none, kinds(I), ILOAD, ILOAD_0, ILOAD_1, ILOAD_2, ILOAD_3, ILOAD_W);
+        define(Opcode.Kind.LOAD, none, kinds(J), LLOAD, LLOAD_0, LLOAD_1, LLOAD_2, LLOAD_3, LLOAD_W);
+        define(Opcode.Kind.LOAD, none, kinds(F), FLOAD, FLOAD_0, FLOAD_1, FLOAD_2, FLOAD_3, FLOAD_W);
+        define(Opcode.Kind.LOAD, none, kinds(D), DLOAD, DLOAD_0, DLOAD_1, DLOAD_2, DLOAD_3, DLOAD_W);
+        define(Opcode.Kind.LOAD, none, kinds(A), ALOAD, ALOAD_0, ALOAD_1, ALOAD_2, ALOAD_3, ALOAD_W);
+
+        define(Opcode.Kind.STORE, kinds(I), none, ISTORE, ISTORE_0, ISTORE_1, ISTORE_2, ISTORE_3, ISTORE_W);
+        define(Opcode.Kind.STORE, kinds(J), none, LSTORE, LSTORE_0, LSTORE_1, LSTORE_2, LSTORE_3, LSTORE_W);
+        define(Opcode.Kind.STORE, kinds(F), none, FSTORE, FSTORE_0, FSTORE_1, FSTORE_2, FSTORE_3, FSTORE_W);
+        define(Opcode.Kind.STORE, kinds(D), none, DSTORE, DSTORE_0, DSTORE_1, DSTORE_2, DSTORE_3, DSTORE_W);
+        define(Opcode.Kind.STORE, kinds(A), none, ASTORE, ASTORE_0, ASTORE_1, ASTORE_2, ASTORE_3, ASTORE_W);
+
+        define(Opcode.Kind.INCREMENT, none, none, IINC, IINC_W);
+
+        define(Opcode.Kind.LOOKUP_SWITCH, kinds(I), none, LOOKUPSWITCH);
+        define(Opcode.Kind.TABLE_SWITCH, kinds(I), none, TABLESWITCH);
+
+        define(Opcode.Kind.MONITOR, kinds(A), none, MONITORENTER, MONITOREXIT);
+
+        define(Opcode.Kind.NEW_OBJECT, none, kinds(A), NEW);
+        define(Opcode.Kind.NEW_PRIMITIVE_ARRAY, kinds(I), kinds(A), NEWARRAY);
+        define(Opcode.Kind.NEW_REF_ARRAY, kinds(I), kinds(A), ANEWARRAY);
+
+        define(Opcode.Kind.NOP, none, none, NOP);
+
+        define(Opcode.Kind.OPERATOR, kinds(I, I), kinds(I),
+                IADD, ISUB, IMUL, IDIV, IREM, IAND, IOR, IXOR, ISHL, ISHR, IUSHR);
+        define(Opcode.Kind.OPERATOR, kinds(J, J), kinds(J), LADD, LSUB, LMUL, LDIV, LREM, LAND, LOR, LXOR);
+        define(Opcode.Kind.OPERATOR, kinds(F, F), kinds(F), FADD, FSUB, FMUL, FDIV, FREM);
+        define(Opcode.Kind.OPERATOR, kinds(D, D), kinds(D), DADD, DSUB, DMUL, DDIV, DREM);
+        define(Opcode.Kind.OPERATOR, kinds(I, J), kinds(J), LSHL, LSHR, LUSHR);
+        define(Opcode.Kind.OPERATOR, kinds(I), kinds(I), INEG);
+        define(Opcode.Kind.OPERATOR, kinds(J), kinds(J), LNEG);
+        define(Opcode.Kind.OPERATOR, kinds(F), kinds(F), FNEG);
+        define(Opcode.Kind.OPERATOR, kinds(D), kinds(D), DNEG);
+        define(Opcode.Kind.OPERATOR, kinds(J, J), kinds(I), LCMP);
+        define(Opcode.Kind.OPERATOR, kinds(F, F), kinds(I), FCMPL, FCMPG);
+        define(Opcode.Kind.OPERATOR, kinds(D, D), kinds(I), DCMPL, DCMPG);
+        define(Opcode.Kind.OPERATOR, kinds(A), kinds(I), ARRAYLENGTH);
+
+        define(Opcode.Kind.RETURN, kinds(I), none, IRETURN);
+        define(Opcode.Kind.RETURN, kinds(J), none, LRETURN);
+        define(Opcode.Kind.RETURN, kinds(F), none, FRETURN);
+        define(Opcode.Kind.RETURN, kinds(D), none, DRETURN);
+        define(Opcode.Kind.RETURN, kinds(A), none, ARETURN);
+        define(Opcode.Kind.RETURN, none, none, RETURN);
+
+        define(Opcode.Kind.THROW_EXCEPTION, kinds(A), none, ATHROW);
+
+        define(Opcode.Kind.TYPE_CHECK, kinds(A), kinds(I), INSTANCEOF);
+        define(Opcode.Kind.TYPE_CHECK, kinds(A), kinds(A), CHECKCAST);
+
+        check();
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.github.david32768.jynxtransform;
+
+// stack at a label or instruction is not the one required
+final class StackMismatchException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String expected;
+    private final String actual;
+
+    StackMismatchException(String msg, String expected, String actual) {
+        super(msg);
+        this.expected = expected;
+        this.actual = actual;
+    }
+
+    String expected() {
+        return expected;
+    }
+
+    String actual() {
+        return actual;
+    }
+
+}
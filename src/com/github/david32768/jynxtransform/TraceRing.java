@@ -0,0 +1,76 @@
+package com.github.david32768.jynxtransform;
+
+import java.lang.classfile.Opcode;
+
+// ring buffer of the last elements checked by a JynxStackChecker in trace mode
+//     a record is (bci, opcode, stack depth in slots, hash of stack) held in parallel int arrays
+//     a checker is used by one thread so there is a buffer per thread and no synchronization
+//     records are also committed as CheckerTraceEvent if that JFR event is enabled
+final class TraceRing {
+
+    static final int LABEL = -1;
+    static final int HANDLER = -2;
+
+    private static final Opcode[] OPCODES = Opcode.values();
+
+    private final int[] bcis;
+    private final int[] ops;
+    private final int[] depths;
+    private final int[] hashes;
+    private long count;
+
+    TraceRing(int capacity) {
+        if (capacity <= 0) {
+            String msg = String.format("capacity must be positive but is %d", capacity);
+            throw new IllegalArgumentException(msg);
+        }
+        this.bcis = new int[capacity];
+        this.ops = new int[capacity];
+        this.depths = new int[capacity];
+        this.hashes = new int[capacity];
+        this.count = 0;
+    }
+
+    void clear() {
+        count = 0;
+    }
+
+    // op is an Opcode ordinal, LABEL or HANDLER
+    void record(int bci, int op, int depth, int hash) {
+        int index = (int)(count++ % bcis.length);
+        bcis[index] = bci;
+        ops[index] = op;
+        depths[index] = depth;
+        hashes[index] = hash;
+        var event = new CheckerTraceEvent();
+        if (event.shouldCommit()) {
+            event.bci = bci;
+            event.element = nameOf(op);
+            event.depth = depth;
+            event.stackHash = hash;
+            event.commit();
+        }
+    }
+
+    private static String nameOf(int op) {
+        return switch (op) {
+            case LABEL -> "label";
+            case HANDLER -> "handler";
+            default -> OPCODES[op].name();
+        };
+    }
+
+    // oldest first
+    String dump() {
+        int size = (int)Math.min(count, bcis.length);
+        var sb = new StringBuilder();
+        sb.append(String.format("last %d of %d elements:%n", size, count));
+        for (long i = count - size; i < count; ++i) {
+            int index = (int)(i % bcis.length);
+            sb.append(String.format("  bci %5d %-16s depth %3d stack hash %08x%n",
+                    bcis[index], nameOf(ops[index]), depths[index], hashes[index]));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.github.david32768.jynxtransform;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+// Client of a TransformServer; requests are made in turn on one connection
+//     a transform that fails in the server is thrown as IllegalStateException with the server's message
+public class TransformClient implements Closeable {
+
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    private TransformClient(SocketChannel channel) {
+        this.channel = channel;
+        this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    public static TransformClient connect(Path socketPath) throws IOException {
+        var channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException ex) {
+            channel.close();
+            String msg = String.format("unable to connect to %s: %s", socketPath, ex.getMessage());
+            throw new IOException(msg, ex);
+        }
+        return new TransformClient(channel);
+    }
+
+    public synchronized byte[] transformClass(byte[] bytes) throws IOException {
+        out.writeInt(TransformServer.CLASS);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+        checkStatus();
+        int length = in.readInt();
+        return in.readNBytes(length);
+    }
+
+    // paths are made absolute as the server may have a different working directory
+    public synchronized void transform(Path input, Path output) throws IOException {
+        out.writeInt(TransformServer.PATHS);
+        out.writeUTF(input.toAbsolutePath().toString());
+        out.writeUTF(output.toAbsolutePath().toString());
+        out.flush();
+        checkStatus();
+    }
+
+    public synchronized void stop() throws IOException {
+        out.writeInt(TransformServer.STOP);
+        out.flush();
+        checkStatus();
+    }
+
+    private void checkStatus() throws IOException {
+        int status = in.readInt();
+        switch (status) {
+            case TransformServer.OK -> {}
+            case TransformServer.FAILED -> throw new IllegalStateException(in.readUTF());
+            default -> {
+                String msg = String.format("unknown reply status %d", status);
+                throw new IOException(msg);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static void usage() {
+        System.err.println("usage: TransformClient socket-path (--stop | input-jar|input-dir output-jar|output-dir)");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean stop = args.length == 2 && args[1].equals("--stop");
+        if (!stop && args.length != 3) {
+            usage();
+        }
+        try (var client = connect(Path.of(args[0]))) {
+            if (stop) {
+                client.stop();
+            } else {
+                client.transform(Path.of(args[1]), Path.of(args[2]));
+            }
+        } catch (IllegalStateException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+}
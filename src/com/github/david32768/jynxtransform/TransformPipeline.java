@@ -0,0 +1,194 @@
+package com.github.david32768.jynxtransform;
+
+import java.lang.classfile.instruction.*;
+
+import java.io.IOException;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassTransform;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.CodeModel;
+import java.lang.classfile.CodeTransform;
+import java.lang.classfile.Instruction;
+import java.lang.classfile.MethodModel;
+import java.lang.classfile.MethodTransform;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+// Runs the stack analysis of JynxStackChecker once for each method then a chain of stages that share it
+//     the unreachable constants dropped by the checker are removed first, then each stage is applied in order
+//     each stage is given the MethodModel and its (read only) StackAnalysis
+//         the stages here preserve the stack at each label and instruction so the analysis stays valid
+//             for later stages; an instruction a stage creates is unknown to the analysis
+//         the stack before each instruction is only recorded if a stage needs it
+//             the analysis is then of a list of the method's elements which is passed to the first stage
+//             as the instructions without operands of a CodeModel are shared objects, one that is repeated
+//                 is replaced by an equal new one so that each instruction has its own stack
+//     stages may be named as the driver options (fold, remove-unreachable, peephole)
+//         only remove-unreachable uses the analysis, to skip its search if all code is known reachable;
+//         fold and peephole work within runs of instructions without labels so need no stack at labels
+//         by a comma separated list or a file with one name per line (# starts a comment)
+//     safe for concurrent use; each thread has its own checker
+public final class TransformPipeline {
+
+    // a stage has a new CodeTransform for each method
+    public interface Stage {
+
+        CodeTransform transform(MethodModel method, StackAnalysis analysis);
+
+        // true if StackAnalysis.stackBefore is used
+        default boolean needsInstructionStacks() {
+            return false;
+        }
+    }
+
+    private static final ClassFile CLASS_FILE = ClassFile.of();
+    private static final String COMMENT = "#";
+
+    private final List<Stage> stages;
+    private final List<RewriteCounts<?>> counts;
+    private final boolean instructionStacks;
+    private final ThreadLocal<JynxStackChecker> checkers;
+
+    public TransformPipeline(List<Stage> stages, boolean trace) {
+        this(stages, List.of(), trace);
+    }
+
+    private TransformPipeline(List<Stage> stages, List<RewriteCounts<?>> counts, boolean trace) {
+        this.stages = List.copyOf(stages);
+        this.counts = List.copyOf(counts);
+        boolean needed = false;
+        for (var stage : stages) {
+            needed |= stage.needsInstructionStacks();
+        }
+        this.instructionStacks = needed;
+        this.checkers = ThreadLocal.withInitial(() -> new JynxStackChecker(trace));
+    }
+
+    public static TransformPipeline ofNames(List<String> names, boolean trace) {
+        List<Stage> stages = new ArrayList<>();
+        List<RewriteCounts<?>> counts = new ArrayList<>();
+        for (String name : names) {
+            switch (name) {
+                case "fold" -> {
+                    var folds = ConstantFolder.newCounts();
+                    counts.add(folds);
+                    stages.add((_, _) -> new ConstantFolder(folds));
+                }
+                case "remove-unreachable" -> {
+                    stages.add((_, analysis) -> new UnreachableCodeEliminator(analysis));
+                }
+                case "peephole" -> {
+                    var rewrites = PeepholeOptimizer.newCounts();
+                    counts.add(rewrites);
+                    stages.add((_, _) -> new PeepholeOptimizer(rewrites));
+                }
+                default -> {
+                    String msg = String.format("unknown pipeline stage %s", name);
+                    throw new IllegalArgumentException(msg);
+                }
+            }
+        }
+        return new TransformPipeline(stages, counts, trace);
+    }
+
+    // comma separated stage names
+    public static List<String> parseNames(String spec) {
+        List<String> names = new ArrayList<>();
+        for (String name : spec.split(",")) {
+            name = name.strip();
+            if (!name.isEmpty()) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    // one stage name on each line
+    public static List<String> readNames(Path config) throws IOException {
+        List<String> names = new ArrayList<>();
+        for (String line : Files.readAllLines(config)) {
+            int comment = line.indexOf(COMMENT);
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.strip();
+            if (!line.isEmpty()) {
+                names.add(line);
+            }
+        }
+        return names;
+    }
+
+    // counts of the named stages that rewrite code
+    public List<RewriteCounts<?>> counts() {
+        return counts;
+    }
+
+    public byte[] transform(byte[] bytes) {
+        var checker = checkers.get();
+        var model = CLASS_FILE.parse(bytes);
+        ClassTransform transform = (clb, cle) -> {
+            if (cle instanceof MethodModel mm && mm.code().isPresent()) {
+                var code = mm.code().get();
+                StackAnalysis analysis;
+                CodeTransform chain;
+                if (instructionStacks) {
+                    var elements = distinctElements(code);
+                    analysis = checker.analyze(code, elements, true);
+                    chain = new DroppingTransform(analysis.droppedElements(), elements);
+                } else {
+                    analysis = checker.analyze(code);
+                    chain = new DroppingTransform(analysis.droppedElements());
+                }
+                for (var stage : stages) {
+                    chain = chain.andThen(stage.transform(mm, analysis));
+                }
+                clb.transformMethod(mm, MethodTransform.transformingCode(chain));
+            } else {
+                clb.with(cle);
+            }
+        };
+        return CLASS_FILE.transform(model, transform);
+    }
+
+    private static List<CodeElement> distinctElements(CodeModel code) {
+        List<CodeElement> elements = new ArrayList<>();
+        Set<Instruction> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (var element : code) {
+            if (element instanceof Instruction inst && !seen.add(inst)) {
+                element = copyOf(inst);
+            }
+            elements.add(element);
+        }
+        return elements;
+    }
+
+    // instructions without operands (the only shared instructions)
+    private static Instruction copyOf(Instruction inst) {
+        var op = inst.opcode();
+        return switch (op.kind()) {
+            case LOAD -> LoadInstruction.of(op, ((LoadInstruction)inst).slot());
+            case STORE -> StoreInstruction.of(op, ((StoreInstruction)inst).slot());
+            case ARRAY_LOAD -> ArrayLoadInstruction.of(op);
+            case ARRAY_STORE -> ArrayStoreInstruction.of(op);
+            case CONSTANT -> ConstantInstruction.ofIntrinsic(op);
+            case STACK -> StackInstruction.of(op);
+            case OPERATOR -> OperatorInstruction.of(op);
+            case CONVERT -> ConvertInstruction.of(op);
+            case RETURN -> ReturnInstruction.of(op);
+            case THROW_EXCEPTION -> ThrowInstruction.of();
+            case MONITOR -> MonitorInstruction.of(op);
+            case NOP -> NopInstruction.of();
+            default -> {
+                String msg = String.format("unexpected shared instruction %s", inst);
+                throw new IllegalStateException(msg);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,225 @@
+package com.github.david32768.jynxtransform;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Resident transform server so that a build does not pay JVM startup and warmup for each module
+//     requests are accepted on a Unix domain socket; each connection is served on its own virtual thread
+//         and may make any number of requests
+//     request is int kind followed by
+//         CLASS   int length, class bytes           reply status then int length, transformed bytes
+//         PATHS   UTF input path, UTF output path   reply status (paths are as for JynxTransformDriver)
+//         STOP                                      reply status; the server stops and the connection is closed
+//     status is int OK or int FAILED followed by UTF message
+//     the socket file is deleted when the server is closed
+public class TransformServer implements Closeable {
+
+    static final int CLASS = 1;
+    static final int PATHS = 2;
+    static final int STOP = 3;
+
+    static final int OK = 0;
+    static final int FAILED = 1;
+
+    private static final int MAX_MESSAGE_LENGTH = 8192;
+
+    private final Path socketPath;
+    private final JynxTransformDriver driver;
+    private final ServerSocketChannel server;
+    private final ExecutorService connections;
+    private final Set<SocketChannel> idle;
+    private boolean closed;
+
+    public TransformServer(Path socketPath, JynxTransformDriver driver) throws IOException {
+        this.socketPath = socketPath;
+        this.driver = driver;
+        this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException ex) {
+            server.close();
+            String msg = String.format("unable to bind %s: %s", socketPath, ex.getMessage());
+            throw new IOException(msg, ex);
+        }
+        this.connections = Executors.newVirtualThreadPerTaskExecutor();
+        this.idle = new HashSet<>();
+        this.closed = false;
+    }
+
+    // returns when the server is stopped by a request or closed
+    public void serve() throws IOException {
+        try {
+            while (true) {
+                SocketChannel channel;
+                try {
+                    channel = server.accept();
+                } catch (ClosedChannelException ex) {
+                    return;
+                }
+                connections.submit(() -> serve(channel));
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        try (channel;
+                var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+                var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            boolean more = true;
+            while (more) {
+                synchronized (idle) {
+                    if (closed) {
+                        return;
+                    }
+                    idle.add(channel);
+                }
+                int kind;
+                try {
+                    kind = in.readInt();
+                } catch (EOFException | ClosedChannelException ex) {
+                    return;
+                } finally {
+                    synchronized (idle) {
+                        idle.remove(channel);
+                    }
+                }
+                more = request(kind, in, out);
+                out.flush();
+            }
+            server.close();
+        } catch (IOException ex) {
+            System.err.format("transform server connection failed: %s%n", ex.getMessage());
+        }
+    }
+
+    // returns false if the server is to stop
+    private boolean request(int kind, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (kind) {
+            case CLASS -> {
+                int length = in.readInt();
+                if (length < 0) {
+                    String msg = String.format("invalid class length %d", length);
+                    throw new IOException(msg);
+                }
+                byte[] bytes = in.readNBytes(length);
+                if (bytes.length != length) {
+                    throw new EOFException("class bytes truncated");
+                }
+                byte[] result;
+                try {
+                    result = driver.transformClass(bytes);
+                } catch (RuntimeException ex) {
+                    failed(out, ex);
+                    return true;
+                }
+                out.writeInt(OK);
+                out.writeInt(result.length);
+                out.write(result);
+            }
+            case PATHS -> {
+                String input = in.readUTF();
+                String output = in.readUTF();
+                try {
+                    driver.transform(Path.of(input), Path.of(output));
+                } catch (IOException | UncheckedIOException | IllegalArgumentException | IllegalStateException ex) {
+                    failed(out, ex);
+                    return true;
+                }
+                out.writeInt(OK);
+            }
+            case STOP -> {
+                out.writeInt(OK);
+                return false;
+            }
+            default -> {
+                String msg = String.format("unknown request kind %d", kind);
+                throw new IOException(msg);
+            }
+        }
+        return true;
+    }
+
+    private static void failed(DataOutputStream out, Exception ex) throws IOException {
+        String msg = ex.getMessage() == null? ex.toString(): ex.getMessage();
+        if (msg.length() > MAX_MESSAGE_LENGTH) {
+            msg = msg.substring(0, MAX_MESSAGE_LENGTH);
+        }
+        out.writeInt(FAILED);
+        out.writeUTF(msg);
+    }
+
+    // closes connections waiting for a request then waits for those with a request in progress to finish
+    @Override
+    public void close() throws IOException {
+        server.close();
+        synchronized (idle) {
+            closed = true;
+            for (var channel : idle) {
+                channel.close();
+            }
+            idle.clear();
+        }
+        connections.close();
+        Files.deleteIfExists(socketPath);
+    }
+
+    private static void usage() {
+        System.err.println("usage: TransformServer [--threads n] socket-path");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int argi = 0;
+        while (argi < args.length && args[argi].startsWith("--")) {
+            switch (args[argi]) {
+                case "--threads" -> {
+                    if (++argi == args.length) {
+                        usage();
+                    }
+                    parallelism = Integer.parseInt(args[argi]);
+                }
+                default -> {
+                    System.err.format("unknown option %s%n", args[argi]);
+                    usage();
+                }
+            }
+            ++argi;
+        }
+        if (args.length - argi != 1) {
+            usage();
+        }
+        var socketPath = Path.of(args[argi]);
+        var server = new TransformServer(socketPath, new JynxTransformDriver(parallelism));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                Files.deleteIfExists(socketPath);
+            } catch (IOException ex) {
+                // nothing to do
+            }
+        }));
+        System.err.format("transform server listening on %s%n", socketPath);
+        server.serve();
+    }
+
+}
@@ -0,0 +1,257 @@
+package com.github.david32768.jynxtransform;
+
+import java.lang.classfile.instruction.*;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.CodeTransform;
+import java.lang.classfile.Instruction;
+import java.lang.classfile.Label;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.attribute.StackMapTableAttribute;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Removes every unreachable instruction of a method
+//     the method is buffered and its reachable instructions found from the entry point and live handlers
+//         (the lastGoto rule of JynxStackChecker cannot decide if a label after an unconditional branch
+//          is reachable as it may only be the target of a later backward branch)
+//     an exception handler is live if a reachable instruction is in its range
+//     LineNumber, LocalVariable, LocalVariableType and CharacterRange elements
+//         that cover only unreachable instructions are removed
+//     labels are kept; the stack map table is removed if anything is (and so regenerated)
+//     given the StackAnalysis of a TransformPipeline, the search is skipped if the checker found every
+//         instruction reachable and no earlier stage has changed a conditional branch or switch
+//         (elements covering no instructions are still removed)
+public class UnreachableCodeEliminator implements CodeTransform {
+
+    private final List<CodeElement> elements;
+    private final Map<Label, Integer> labelIndexes;
+    private final List<ExceptionCatch> handlers;
+    private final StackAnalysis analysis;
+
+    private boolean[] reachable;
+    private int conditionalBranches;
+    private boolean subroutines;
+    private int removedInstructions;
+    private int removedHandlers;
+    private int removedDebug;
+
+    public UnreachableCodeEliminator() {
+        this(null);
+    }
+
+    // analysis null if not known
+    public UnreachableCodeEliminator(StackAnalysis analysis) {
+        this.elements = new ArrayList<>();
+        this.labelIndexes = new HashMap<>();
+        this.handlers = new ArrayList<>();
+        this.analysis = analysis;
+    }
+
+    // counts for the last method transformed
+
+    public int removedInstructions() {
+        return removedInstructions;
+    }
+
+    public int removedHandlers() {
+        return removedHandlers;
+    }
+
+    public int removedDebugElements() {
+        return removedDebug;
+    }
+
+    @Override
+    public void atStart(CodeBuilder builder) {
+        elements.clear();
+        labelIndexes.clear();
+        handlers.clear();
+        conditionalBranches = 0;
+        subroutines = false;
+        removedInstructions = 0;
+        removedHandlers = 0;
+        removedDebug = 0;
+    }
+
+    @Override
+    public void accept(CodeBuilder builder, CodeElement element) {
+        switch (element) {
+            case LabelTarget i -> labelIndexes.put(i.label(), elements.size());
+            case ExceptionCatch i -> handlers.add(i);
+            case Instruction i -> {
+                conditionalBranches += StackAnalysis.isConditionalBranch(i.opcode())? 1: 0;
+                subroutines |= i.opcode().kind() == Opcode.Kind.DISCONTINUED_JSR;
+            }
+            default -> {}
+        }
+        elements.add(element);
+    }
+
+    // folding a branch removes it or makes it a GOTO so may make code unreachable
+    private boolean allReachable() {
+        return analysis != null && analysis.allReachable() && !subroutines
+                && conditionalBranches == analysis.conditionalBranches();
+    }
+
+    @Override
+    public void atEnd(CodeBuilder builder) {
+        reachable = new boolean[elements.size()];
+        if (allReachable()) {
+            Arrays.fill(reachable, true);
+        } else {
+            markReachable();
+        }
+        boolean[] keep = keepElements();
+        boolean removed = removedInstructions + removedHandlers + removedDebug != 0;
+        for (int i = 0; i < elements.size(); ++i) {
+            var element = elements.get(i);
+            if (keep[i] && !(removed && element instanceof StackMapTableAttribute)) {
+                builder.with(element);
+            }
+        }
+        elements.clear();
+        labelIndexes.clear();
+        handlers.clear();
+        reachable = null;
+    }
+
+    private boolean[] keepElements() {
+        boolean[] keep = new boolean[elements.size()];
+        boolean[] liveLines = liveLineNumbers();
+        for (int i = 0; i < elements.size(); ++i) {
+            switch (elements.get(i)) {
+                case Instruction inst -> {
+                    keep[i] = reachable[i];
+                    removedInstructions += keep[i]? 0: 1;
+                }
+                case ExceptionCatch ec -> {
+                    keep[i] = anyReachable(ec.tryStart(), ec.tryEnd());
+                    removedHandlers += keep[i]? 0: 1;
+                }
+                case LineNumber ln -> {
+                    keep[i] = liveLines[i];
+                    removedDebug += keep[i]? 0: 1;
+                }
+                case LocalVariable lv -> {
+                    keep[i] = anyReachable(lv.startScope(), lv.endScope());
+                    removedDebug += keep[i]? 0: 1;
+                }
+                case LocalVariableType lvt -> {
+                    keep[i] = anyReachable(lvt.startScope(), lvt.endScope());
+                    removedDebug += keep[i]? 0: 1;
+                }
+                case CharacterRange cr -> {
+                    keep[i] = anyReachable(cr.startScope(), cr.endScope());
+                    removedDebug += keep[i]? 0: 1;
+                }
+                default -> keep[i] = true;
+            }
+        }
+        return keep;
+    }
+
+    private int indexOf(Label label) {
+        Integer index = labelIndexes.get(label);
+        if (index == null) {
+            String msg = String.format("label %s is not bound", label);
+            throw new IllegalArgumentException(msg);
+        }
+        return index;
+    }
+
+    private boolean anyReachable(Label start, Label end) {
+        int endIndex = indexOf(end);
+        for (int i = indexOf(start); i < endIndex; ++i) {
+            if (reachable[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // fixpoint of reachable instructions and live handlers
+    private void markReachable() {
+        List<Integer> pending = new ArrayList<>();
+        pending.add(0);
+        boolean[] liveHandlers = new boolean[handlers.size()];
+        boolean changed = true;
+        while (changed) {
+            while (!pending.isEmpty()) {
+                markFrom(pending.removeLast(), pending);
+            }
+            changed = false;
+            for (int i = 0; i < handlers.size(); ++i) {
+                var handler = handlers.get(i);
+                if (!liveHandlers[i] && anyReachable(handler.tryStart(), handler.tryEnd())) {
+                    liveHandlers[i] = true;
+                    pending.add(indexOf(handler.handler()));
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private void markFrom(int start, List<Integer> pending) {
+        for (int i = start; i < elements.size(); ++i) {
+            if (elements.get(i) instanceof Instruction inst) {
+                if (reachable[i]) {
+                    return;
+                }
+                reachable[i] = true;
+                var op = inst.opcode();
+                switch (op.kind()) {
+                    case BRANCH -> {
+                        pending.add(indexOf(((BranchInstruction)inst).target()));
+                    }
+                    case DISCONTINUED_JSR -> {
+                        pending.add(indexOf(((DiscontinuedInstruction.JsrInstruction)inst).target()));
+                    }
+                    case LOOKUP_SWITCH -> {
+                        var lookup = (LookupSwitchInstruction)inst;
+                        pending.add(indexOf(lookup.defaultTarget()));
+                        for (SwitchCase switchCase : lookup.cases()) {
+                            pending.add(indexOf(switchCase.target()));
+                        }
+                    }
+                    case TABLE_SWITCH -> {
+                        var table = (TableSwitchInstruction)inst;
+                        pending.add(indexOf(table.defaultTarget()));
+                        for (SwitchCase switchCase : table.cases()) {
+                            pending.add(indexOf(switchCase.target()));
+                        }
+                    }
+                    case DISCONTINUED_RET -> {
+                        return;
+                    }
+                    default -> {}
+                }
+                if (op.isUnconditionalBranch()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // a line number is live if a reachable instruction precedes the next line number
+    private boolean[] liveLineNumbers() {
+        boolean[] liveLines = new boolean[elements.size()];
+        boolean live = false;
+        for (int i = elements.size() - 1; i >= 0; --i) {
+            switch (elements.get(i)) {
+                case Instruction inst -> live |= reachable[i];
+                case LineNumber ln -> {
+                    liveLines[i] = live;
+                    live = false;
+                }
+                default -> {}
+            }
+        }
+        return liveLines;
+    }
+
+}
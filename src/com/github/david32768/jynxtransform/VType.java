@@ -0,0 +1,90 @@
+package com.github.david32768.jynxtransform;
+
+import java.lang.classfile.Label;
+import java.lang.classfile.TypeKind;
+import java.lang.classfile.attribute.StackMapFrameInfo.ObjectVerificationTypeInfo;
+import java.lang.classfile.attribute.StackMapFrameInfo.SimpleVerificationTypeInfo;
+import java.lang.classfile.attribute.StackMapFrameInfo.UninitializedVerificationTypeInfo;
+import java.lang.classfile.attribute.StackMapFrameInfo.VerificationTypeInfo;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.util.function.IntFunction;
+
+// verification type of a stack entry or local variable slot
+//     long and double are a single entry on the stack but occupy two local slots (second is TOP)
+sealed interface VType {
+
+    enum Simple implements VType {
+        TOP,
+        INTEGER,
+        FLOAT,
+        LONG,
+        DOUBLE,
+        NULL,
+        UNINITIALIZED_THIS,
+        // a reference merged from classes whose common superclass the ClassHierarchy does not know
+        //     written as java.lang.Object in frames
+        UNKNOWN_REFERENCE,
+        ;
+    }
+
+    record Reference(ClassDesc desc) implements VType {}
+
+    // newIndex is the element index of the NEW instruction in its CodeModel
+    record Uninitialized(int newIndex, ClassDesc desc) implements VType {}
+
+    static VType of(TypeKind kind) {
+        return switch (kind.asLoadable()) {
+            case IntType -> Simple.INTEGER;
+            case LongType -> Simple.LONG;
+            case FloatType -> Simple.FLOAT;
+            case DoubleType -> Simple.DOUBLE;
+            default -> {
+                String msg = String.format("no verification type for %s", kind);
+                throw new IllegalArgumentException(msg);
+            }
+        };
+    }
+
+    static VType of(ClassDesc desc) {
+        if (desc.isPrimitive()) {
+            return of(TypeKind.from(desc));
+        }
+        return new Reference(desc);
+    }
+
+    default boolean isCategory2() {
+        return this == Simple.LONG || this == Simple.DOUBLE;
+    }
+
+    // the TypeKind this verification type has on the stack (VoidType for TOP)
+    default TypeKind kind() {
+        return switch (this) {
+            case Simple.TOP -> TypeKind.VoidType;
+            case Simple.INTEGER -> TypeKind.IntType;
+            case Simple.FLOAT -> TypeKind.FloatType;
+            case Simple.LONG -> TypeKind.LongType;
+            case Simple.DOUBLE -> TypeKind.DoubleType;
+            case Simple.NULL, Simple.UNINITIALIZED_THIS, Simple.UNKNOWN_REFERENCE -> TypeKind.ReferenceType;
+            case Reference _ -> TypeKind.ReferenceType;
+            case Uninitialized _ -> TypeKind.ReferenceType;
+        };
+    }
+
+    // newLabels maps the element index of a NEW instruction to a label bound before it
+    default VerificationTypeInfo toInfo(IntFunction<Label> newLabels) {
+        return switch (this) {
+            case Simple.TOP -> SimpleVerificationTypeInfo.ITEM_TOP;
+            case Simple.INTEGER -> SimpleVerificationTypeInfo.ITEM_INTEGER;
+            case Simple.FLOAT -> SimpleVerificationTypeInfo.ITEM_FLOAT;
+            case Simple.LONG -> SimpleVerificationTypeInfo.ITEM_LONG;
+            case Simple.DOUBLE -> SimpleVerificationTypeInfo.ITEM_DOUBLE;
+            case Simple.NULL -> SimpleVerificationTypeInfo.ITEM_NULL;
+            case Simple.UNINITIALIZED_THIS -> SimpleVerificationTypeInfo.ITEM_UNINITIALIZED_THIS;
+            case Simple.UNKNOWN_REFERENCE -> ObjectVerificationTypeInfo.of(ConstantDescs.CD_Object);
+            case Reference ref -> ObjectVerificationTypeInfo.of(ref.desc());
+            case Uninitialized uninit -> UninitializedVerificationTypeInfo.of(newLabels.apply(uninit.newIndex()));
+        };
+    }
+
+}
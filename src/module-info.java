@@ -1,3 +1,6 @@
 module JynxTransform {
+    requires java.instrument;
+    requires java.management;
+    requires jdk.jfr;
     exports com.github.david32768.jynxtransform;
 }